@@ -4,6 +4,7 @@ import com.gigya.socialize.GSRequest;
 
 public class GSAuthRequest extends GSRequest {
 
+    private GSAuthJwtSigner signer;
     private String privateKey;
 
     /**
@@ -17,10 +18,27 @@ public class GSAuthRequest extends GSRequest {
         this.privateKey = privateKey;
     }
 
+    /**
+     * @param signer    Signer of the authorization JWT, shared between requests. See {@link GSAuthJwtSigner}.
+     * @param apiKey    Site api key.
+     * @param apiMethod Request api method.
+     */
+    public GSAuthRequest(GSAuthJwtSigner signer, String apiKey, String apiMethod) {
+        super(apiKey, null, null, apiMethod, null, true, signer.getUserKey());
+        this.signer = signer;
+    }
+
     @Override
     protected void signRequest(String token, String secret, String httpMethod, String resourceURI) {
         // Compose jwt && add to request header.
-        final String jwt = GSAuthRequestUtils.composeJwt(this.userKey, this.privateKey);
+        String jwt = null;
+        try {
+            if (signer == null)
+                signer = GSAuthJwtSigner.forKey(this.userKey, this.privateKey);
+            jwt = signer.getJwt();
+        } catch (IllegalArgumentException e) {
+            logger.write(e.getMessage());
+        }
         if (jwt == null) {
             logger.write("Failed to generate authorization JWT");
         }
@@ -4,11 +4,8 @@ import com.gigya.socialize.GSArray;
 import com.gigya.socialize.GSLogger;
 import com.gigya.socialize.GSObject;
 import com.gigya.socialize.GSResponse;
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jws;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.math.BigInteger;
@@ -19,6 +16,9 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class GSAuthRequestUtils {
 
@@ -27,36 +27,76 @@ public class GSAuthRequestUtils {
     public static GSLogger logger = new GSLogger();
 
     /**
-     * Caching the public keys.
-     * Key - data center (lower cased).
-     * Value - public key jwk.
+     * Caching the public keys, by data center and kid.
      */
-    private static Map<String, String> publicKeysCache = new HashMap<>();
+    private static final GSJwksCache jwksCache = new GSJwksCache();
+
+    /**
+     * @return The public key cache used to validate signatures, for example to configure its TTL.
+     */
+    public static GSJwksCache getJwksCache() {
+        return jwksCache;
+    }
+
+    /**
+     * Optional cache of verified tokens, disabled by default.
+     */
+    private static volatile GSVerifiedTokenCache verifiedTokenCache;
+
+    /**
+     * Enable caching the results of {@link #validateSignature}, so a token validated again before it expires is
+     * not verified again.
+     *
+     * @param cache Verified token cache, or null to disable caching.
+     */
+    public static void setVerifiedTokenCache(GSVerifiedTokenCache cache) {
+        verifiedTokenCache = cache;
+    }
+
+    public static GSVerifiedTokenCache getVerifiedTokenCache() {
+        return verifiedTokenCache;
+    }
 
     /**
      * Explicitly add a public jwk to cache.
      *
      * @param dataCenterKey Data center as the key.
-     * @param jwk           JWK value.
+     * @param jwk           JWK value, including its kid.
      */
     public static void addToPublicKeyCache(String dataCenterKey, String jwk) {
-        publicKeysCache.put(dataCenterKey, jwk);
+        try {
+            jwksCache.put(dataCenterKey, jwk);
+        } catch (IllegalArgumentException ex) {
+            logger.write("Failed to add JWK to cache: " + ex.getMessage());
+        }
     }
 
     /**
      * Clear public key cache.
      */
     public static void clearPublicKeysCache() {
-        publicKeysCache.clear();
+        jwksCache.clear();
+        clearVerifiedTokens();
     }
 
     /**
-     * Clear cached public key from public keys cache.
+     * Clear cached public keys of a data center from public keys cache.
      *
      * @param dataCenter Data center key.
      */
     public static void clearPublicKeysCache(String dataCenter) {
-        publicKeysCache.remove(dataCenter);
+        jwksCache.clear(dataCenter);
+        clearVerifiedTokens();
+    }
+
+    /**
+     * Tokens verified with a removed key must be verified again.
+     */
+    private static void clearVerifiedTokens() {
+        final GSVerifiedTokenCache cache = verifiedTokenCache;
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
     /**
@@ -157,6 +197,17 @@ public class GSAuthRequestUtils {
             return null;
         }
 
+        return signJwt(userKey, key);
+    }
+
+    /**
+     * Compose and sign a JWT given account userKey and a decoded private key.
+     *
+     * @param userKey Account user key.
+     * @param key     Account private key.
+     * @return Generated JWT String.
+     */
+    static String signJwt(String userKey, PrivateKey key) {
         // #2 - Add JWT headers.
         final Map<String, Object> header = new HashMap<>();
         header.put("alg", "RS256");
@@ -184,73 +235,121 @@ public class GSAuthRequestUtils {
      * @return UID field if validation is successful.
      */
     public static String validateSignature(String jwt, String apiKey, String apiDomain) {
-        // Track whether the cache was initially empty
-        boolean wasCacheEmpty = !publicKeysCache.containsKey(apiDomain.toLowerCase());
-
-        // First attempt to validate the JWT
-        String result = attemptValidation(jwt, apiKey, apiDomain);
-        if (result != null) {
-            return result; // successfully validated
+        // A token verified before is accepted until it expires.
+        final GSVerifiedTokenCache cache = verifiedTokenCache;
+        if (cache != null && jwt != null) {
+            final String cachedUID = cache.get(jwt, apiKey, apiDomain);
+            if (cachedUID != null) {
+                return cachedUID;
+            }
         }
 
-        // If the cache was empty initially, no need to retry
-        if (wasCacheEmpty) {
-            logger.write("JWT validation failed.");
+        // Parse the token once. The key ID (kid) is read from its header.
+        final GSJwtVerifier.Token token;
+        try {
+            token = GSJwtVerifier.parse(jwt);
+        } catch (IllegalArgumentException e) {
+            logger.write("Failed to parse jwt: " + e.getMessage());
             return null;
         }
-
-        // Log and retry after clearing the cache
-        logger.write("JWT validation failed. Clearing cache and retrying due to possible key rotation.");
-        publicKeysCache.clear();
-
-        // Retry the validation with the cache cleared
-        return attemptValidation(jwt, apiKey, apiDomain);
-    }
-
-    private static String attemptValidation(String jwt, String apiKey, String apiDomain) {
-        // Extract the key ID (kid) from the JWT header
-        final String kid = getKidFromJWSHeader(jwt);
+        final String kid = token.getKid();
         if (kid == null) {
             logger.write("Failed to parse kid header");
             return null;
         }
 
-        // Fetch the public JWK (from cache or network)
-        String publicJWK = getPublicJWK(kid, apiKey, apiDomain);
-        if (publicJWK == null) {
-            // JWT not available.
+        // Fetch the public key (from cache or network). A rotated key has a new kid and is fetched on first use.
+        final PublicKey publicKey = jwksCache.getPublicKey(kid, apiKey, apiDomain);
+        if (publicKey == null) {
             logger.write("Failed to fetch JWK public key");
             return null;
         }
 
-        // Convert the JWK into a PublicKey instance
-        PublicKey publicKey = GSAuthRequestUtils.rsaPublicKeyFromJWKString(publicJWK);
-        if (publicKey == null) {
-            logger.write("Failed to instantiate PublicKey instance from JWK");
-            return null;
+        // Validate the JWT using the cached public key
+        final String result = GSJwtVerifier.verify(token, apiKey, publicKey);
+        if (result == null) {
+            logger.write("JWT validation failed.");
+        } else if (cache != null) {
+            cache.put(jwt, apiKey, apiDomain, result, token.getExpiration());
         }
-
-        // Update public key cache only when it was successfully generated. Useless otherwise.
-        publicKeysCache.put(apiDomain.toLowerCase(), publicJWK);
-
-        // Validate the JWT using the generated public key
-        return verifyJwt(jwt, apiKey, publicKey);
+        return result;
     }
 
-    private static String getPublicJWK(String kid, String apiKey, String apiDomain) {
-        String publicJWK = null;
+    /**
+     * Verify many Gigya Id Tokens in parallel on the common fork-join pool.
+     *
+     * @param jwts      Id tokens.
+     * @param apiKey    Client ApiKey.
+     * @param apiDomain Api domain.
+     * @return The UID of each token, in the order of the tokens, or null for a token that could not be validated.
+     * @see #validateSignatures(Collection, String, String, ForkJoinPool)
+     */
+    public static List<String> validateSignatures(Collection<String> jwts, String apiKey, String apiDomain) {
+        return validateSignatures(jwts, apiKey, apiDomain, ForkJoinPool.commonPool());
+    }
 
-        // try to fetch from cache.
-        if (publicKeysCache.containsKey(apiDomain.toLowerCase())) {
-            publicJWK = publicKeysCache.get(apiDomain.toLowerCase());
-        }
+    /**
+     * Verify many Gigya Id Tokens in parallel.
+     * <p>
+     * Tokens are grouped by "kid", so the public key of each kid is resolved once for the whole batch. Failures of
+     * single tokens are not logged, to keep large batches (for example when re-validating stored tokens) cheap.
+     *
+     * @param jwts      Id tokens.
+     * @param apiKey    Client ApiKey.
+     * @param apiDomain Api domain.
+     * @param pool      Pool the tokens are verified on.
+     * @return The UID of each token, in the order of the tokens, or null for a token that could not be validated.
+     */
+    public static List<String> validateSignatures(Collection<String> jwts, final String apiKey, final String apiDomain,
+                                                  ForkJoinPool pool) {
+        final String[] tokens = jwts.toArray(new String[0]);
+        final GSJwtVerifier.Token[] parsed = new GSJwtVerifier.Token[tokens.length];
+        final String[] results = new String[tokens.length];
+        final GSVerifiedTokenCache cache = verifiedTokenCache;
+        try {
+            // #1 - Parse the tokens not verified before.
+            pool.submit(() -> IntStream.range(0, tokens.length).parallel().forEach(i -> {
+                if (tokens[i] == null)
+                    return;
+                if (cache != null) {
+                    results[i] = cache.get(tokens[i], apiKey, apiDomain);
+                    if (results[i] != null)
+                        return;
+                }
+                try {
+                    parsed[i] = GSJwtVerifier.parse(tokens[i]);
+                } catch (IllegalArgumentException e) {
+                    // not a valid token
+                }
+            })).get();
+
+            // #2 - Resolve the public key of each kid once.
+            final Map<String, PublicKey> publicKeys = new HashMap<>();
+            for (GSJwtVerifier.Token token : parsed) {
+                final String kid = token != null ? token.getKid() : null;
+                if (kid != null && !publicKeys.containsKey(kid)) {
+                    publicKeys.put(kid, jwksCache.getPublicKey(kid, apiKey, apiDomain));
+                }
+            }
 
-        // None in cache - fetch from network.
-        if (publicJWK == null) {
-            publicJWK = fetchPublicJWK(kid, apiKey, apiDomain);
+            // #3 - Verify the tokens.
+            pool.submit(() -> IntStream.range(0, tokens.length).parallel().forEach(i -> {
+                final GSJwtVerifier.Token token = parsed[i];
+                final PublicKey publicKey = token != null && token.getKid() != null ? publicKeys.get(token.getKid()) : null;
+                if (publicKey == null)
+                    return;
+                results[i] = GSJwtVerifier.verify(token, apiKey, publicKey, null);
+                if (results[i] != null && cache != null)
+                    cache.put(tokens[i], apiKey, apiDomain, results[i], token.getExpiration());
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.write("Batch JWT validation interrupted");
+        } catch (ExecutionException e) {
+            logger.write("Batch JWT validation failed");
+            logger.write(e);
         }
-
-        return publicJWK;
+        return Arrays.asList(results);
     }
 
     /**
@@ -260,19 +359,10 @@ public class GSAuthRequestUtils {
      * @return Kid field from token header.
      */
     static String getKidFromJWSHeader(String jws) {
-        String[] split = jws.split("\\.");
-        if (split.length > 0) {
-            final String encodedHeaders = split[0];
-            final String decodedHeaders = new String(Base64.getDecoder().decode(encodedHeaders.getBytes()));
-
-            // Parse json headers. Fetch kid fields.
-            try {
-                final JSONObject jsonObject = new JSONObject(decodedHeaders);
-                return jsonObject.getString("kid");
-            } catch (JSONException e) {
-                logger.write("Failed to parse jwk headers");
-                e.printStackTrace();
-            }
+        try {
+            return GSJwtVerifier.parse(jws).getKid();
+        } catch (IllegalArgumentException e) {
+            logger.write("Failed to parse jwk headers");
         }
         return null;
     }
@@ -286,34 +376,48 @@ public class GSAuthRequestUtils {
      * @return Validated JWK.
      */
     static String fetchPublicJWK(String kid, String apiKey, String apiDomain) {
+        final Map<String, String> jwks = fetchPublicJWKs(apiKey, apiDomain);
+        return jwks != null ? jwks.get(kid) : null;
+    }
 
-        // Fetch the public key using endpoint "accounts.getJWTPublicKey".
+    /**
+     * Fetch all the public key JWKs of a data center.
+     *
+     * @param apiKey    Site ApiKey.
+     * @param apiDomain Data center.
+     * @return JWKs by kid, or null if the request failed.
+     */
+    static Map<String, String> fetchPublicJWKs(String apiKey, String apiDomain) {
+
+        // Fetch the public keys using endpoint "accounts.getJWTPublicKey".
         final GSAnonymousRequest request = new GSAnonymousRequest(apiKey, apiDomain, "accounts.getJWTPublicKey");
         request.setParam("V2", true);
 
         final GSResponse response = request.send();
-        if (response.getErrorCode() == 0) {
+        if (response.getErrorCode() != 0) {
+            logger.write("Failed to fetch JWK public keys: " + response.getErrorMessage());
+            return null;
+        }
 
-            final GSArray keys = response.getArray("keys", null);
-            if (keys == null) {
-                logger.write("Failed to obtain JWK from response data");
-                return null;
-            }
-            if (keys.length() == 0) {
-                logger.write("Failed to obtain JWK from response data - data is empty");
-                return null;
-            }
+        final GSArray keys = response.getArray("keys", null);
+        if (keys == null) {
+            logger.write("Failed to obtain JWK from response data");
+            return null;
+        }
+        if (keys.length() == 0) {
+            logger.write("Failed to obtain JWK from response data - data is empty");
+        }
 
-            for (Object key : keys) {
-                if (key instanceof GSObject) {
-                    final String jwkKid = ((GSObject) key).getString("kid", null);
-                    if (jwkKid != null && jwkKid.equals(kid)) {
-                        return ((GSObject) key).toJsonString();
-                    }
+        final Map<String, String> jwks = new HashMap<>();
+        for (Object key : keys) {
+            if (key instanceof GSObject) {
+                final String jwkKid = ((GSObject) key).getString("kid", null);
+                if (jwkKid != null) {
+                    jwks.put(jwkKid, ((GSObject) key).toJsonString());
                 }
             }
         }
-        return null;
+        return jwks;
     }
 
     /**
@@ -324,41 +428,6 @@ public class GSAuthRequestUtils {
      * @return UID field (jwt subject) if verified.
      */
     static String verifyJwt(String jwt, String apiKey, PublicKey key) {
-        try {
-            // #1 - Parse token. Signing key must be available.
-            final Jws<Claims> claimsJws = Jwts.parser()
-                    .verifyWith(key)
-                    .build()
-                    .parseSignedClaims(jwt);
-
-            // #2 - Verify JWT provided api key with input api key.
-            final String issuer = claimsJws.getBody().getIssuer();
-            final String validIssuer = "https://fidm.gigya.com/jwt/" + apiKey + "/";
-            if (issuer != null && !issuer.equals(validIssuer)) {
-                logger.write("JWT verification failed - apiKey does not match");
-                return null;
-            }
-
-            // #3 - Verify current time is between iat & exp. Add 120 seconds grace period.
-            final long iat = claimsJws.getBody().get("iat", Long.class);
-            final long exp = claimsJws.getBody().get("exp", Long.class);
-            final long skew = 120; // Seconds.
-            final long currentTimeInUTC = Calendar.getInstance(TimeZone.getTimeZone("UTC")).getTimeInMillis() / 1000;  // UTC (seconds).
-            if (!(currentTimeInUTC >= iat && (currentTimeInUTC <= exp + skew))) {
-                logger.write("JWT verification failed - expired");
-                return null;
-            }
-
-            // #4 - Fetch the UID field - subject field of the jwt.
-            final String UID = claimsJws.getBody().getSubject();
-            if (UID != null) {
-                return UID;
-            }
-        } catch (Exception e) {
-            logger.write("Failed to verify jwt with exception");
-            logger.write(e);
-            e.printStackTrace();
-        }
-        return null;
+        return GSJwtVerifier.verify(jwt, apiKey, key);
     }
 }
@@ -0,0 +1,349 @@
+package com.gigya.auth;
+
+import com.gigya.socialize.GSExecutors;
+import org.json.JSONObject;
+
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GSJwksCache - A thread-safe cache of the public keys used to verify Gigya id tokens, keyed by data center and "kid".
+ * <p>
+ * Keys are fetched with accounts.getJWTPublicKey, which returns all the current keys of a data center; every key of
+ * the response is cached as a ready to use {@link PublicKey}.
+ * <ul>
+ * <li>Single-flight: concurrent misses for the same data center share one fetch.</li>
+ * <li>Keys expire after a TTL. Once a key has been cached for most of its TTL, it is refreshed in the background
+ * while requests keep using it. If a refresh fails, the expired key is kept until a fetch succeeds, and the failure
+ * is returned by {@link #getLastFetchError()}.</li>
+ * <li>A data center is fetched at most once per minimum fetch interval, so tokens with unknown kids, or with expired
+ * keys while the data center is unreachable, cannot cause a flood of fetches. Within the interval, a kid missing from
+ * the last fetch is answered as unknown without being cached, so tokens with made-up kids do not grow the cache; a
+ * newly published key is found once the interval has passed. Expired keys missing from a successful fetch are
+ * dropped.</li>
+ * </ul>
+ * The shared instance used by {@link GSAuthRequestUtils#validateSignature} is returned by
+ * {@link GSAuthRequestUtils#getJwksCache()}.
+ */
+public class GSJwksCache {
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(1);
+    public static final long DEFAULT_MIN_FETCH_INTERVAL_MS = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Fetches the keys of a data center.
+     */
+    interface Fetcher {
+        /**
+         * @return The JWKs of the data center by kid, or null if the fetch failed.
+         */
+        Map<String, String> fetch(String apiKey, String apiDomain);
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CompletableFuture<Boolean>> fetches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> lastFetchNanos = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Boolean> backgroundRefreshes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, FetchedJwks> lastFetched = new ConcurrentHashMap<>();
+    private final AtomicLong fetchCount = new AtomicLong();
+    private volatile Exception lastFetchError;
+    private volatile long ttlNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TTL_MS);
+    private volatile long minFetchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MIN_FETCH_INTERVAL_MS);
+    private final Fetcher fetcher;
+
+    public GSJwksCache() {
+        this(new Fetcher() {
+            public Map<String, String> fetch(String apiKey, String apiDomain) {
+                return GSAuthRequestUtils.fetchPublicJWKs(apiKey, apiDomain);
+            }
+        });
+    }
+
+    GSJwksCache(Fetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * @param ttlMS Time a fetched key is used for before it is fetched again, in milliseconds.
+     */
+    public void setTtl(long ttlMS) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMS);
+    }
+
+    /**
+     * @param minFetchIntervalMS Minimum time between fetches of a data center's keys, in milliseconds.
+     */
+    public void setMinFetchInterval(long minFetchIntervalMS) {
+        this.minFetchIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minFetchIntervalMS);
+    }
+
+    /**
+     * Returns the public key of a kid, fetching the data center's keys if it is not cached.
+     *
+     * @param kid       Key id, from the token header.
+     * @param apiKey    Site ApiKey, used to fetch the keys.
+     * @param apiDomain Data center.
+     * @return The public key, or null if the kid is unknown or the keys could not be fetched.
+     */
+    public PublicKey getPublicKey(String kid, String apiKey, String apiDomain) {
+        String dc = apiDomain.toLowerCase(Locale.ENGLISH);
+        String cacheKey = cacheKey(dc, kid);
+        Entry entry = entries.get(cacheKey);
+        long now = System.nanoTime();
+        if (entry != null && now - entry.expiresNanos < 0) {
+            if (now - entry.refreshNanos >= 0)
+                refreshInBackground(apiKey, apiDomain);
+            return entry.publicKey;
+        }
+
+        // a successful fetch refreshes or drops expired keys, so an expired key means the last fetch failed,
+        // and no key means the last fetch did not return the kid
+        if (fetchedRecently(dc, now))
+            return entry != null ? entry.publicKey : null;
+
+        boolean fetched = refresh(apiKey, apiDomain);
+        Entry current = entries.get(cacheKey);
+        if (current != null && current != entry)
+            return current.publicKey;
+        // keep using an expired key while its data center cannot be reached
+        return !fetched && entry != null ? entry.publicKey : null;
+    }
+
+    /**
+     * Fetches the keys of a data center now, or waits for a fetch already in progress.
+     *
+     * @param apiKey    Site ApiKey.
+     * @param apiDomain Data center.
+     * @return True if the keys were fetched.
+     */
+    public boolean refresh(String apiKey, String apiDomain) {
+        String dc = apiDomain.toLowerCase(Locale.ENGLISH);
+        CompletableFuture<Boolean> fetch = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = fetches.putIfAbsent(dc, fetch);
+        if (inFlight != null)
+            return inFlight.join();
+
+        boolean fetched = false;
+        Exception error = null;
+        try {
+            fetchCount.incrementAndGet();
+            Map<String, String> jwks = fetcher.fetch(apiKey, apiDomain);
+            if (jwks != null) {
+                final Map<String, String> valid = new HashMap<>();
+                for (Map.Entry<String, String> jwk : jwks.entrySet()) {
+                    try {
+                        put(dc, jwk.getKey(), jwk.getValue(), 0);
+                        valid.put(jwk.getKey(), jwk.getValue());
+                    } catch (IllegalArgumentException e) {
+                        // the other keys of the data center are still usable
+                        error = e;
+                    }
+                }
+                removeExpired(dc, valid.keySet());
+                lastFetched.put(dc, new FetchedJwks(valid, System.currentTimeMillis()));
+                fetched = true;
+            } else {
+                error = new IllegalStateException("Failed to fetch JWK public keys of " + apiDomain);
+            }
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            lastFetchError = error;
+            // failed fetches count too, so an unreachable data center is not asked again on every call
+            lastFetchNanos.put(dc, System.nanoTime());
+            fetches.remove(dc, fetch);
+            fetch.complete(fetched);
+        }
+        return fetched;
+    }
+
+    /**
+     * Adds a key, for example one distributed with the application.
+     *
+     * @param apiDomain Data center.
+     * @param jwk       JWK value, including its "kid".
+     * @throws IllegalArgumentException if the JWK is not a valid RSA key.
+     */
+    public void put(String apiDomain, String jwk) {
+        String kid;
+        try {
+            kid = new JSONObject(jwk).getString("kid");
+        } catch (Exception e) {
+            throw new IllegalArgumentException("JWK has no kid", e);
+        }
+        put(apiDomain.toLowerCase(Locale.ENGLISH), kid, jwk, 0);
+    }
+
+    /**
+     * Adds the keys of an earlier fetch, for example persisted by {@link GSJwksRefresher}. The keys expire at the
+     * end of the TTL of the original fetch; keys older than the TTL are not added.
+     *
+     * @param apiDomain Data center.
+     * @param fetched   The keys and the time they were fetched.
+     * @throws IllegalArgumentException if a key is not a valid RSA key. The other keys are added.
+     */
+    void putFetched(String apiDomain, FetchedJwks fetched) {
+        final long ageNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - fetched.fetchedAtMS));
+        if (ageNanos >= ttlNanos)
+            return;
+        final String dc = apiDomain.toLowerCase(Locale.ENGLISH);
+        final Map<String, String> valid = new HashMap<>();
+        IllegalArgumentException invalid = null;
+        for (Map.Entry<String, String> jwk : fetched.jwks.entrySet()) {
+            try {
+                put(dc, jwk.getKey(), jwk.getValue(), ageNanos);
+                valid.put(jwk.getKey(), jwk.getValue());
+            } catch (IllegalArgumentException e) {
+                invalid = e;
+            }
+        }
+        // a fetch of this process is more recent than the loaded one
+        lastFetched.putIfAbsent(dc, new FetchedJwks(valid, fetched.fetchedAtMS));
+        if (invalid != null)
+            throw invalid;
+    }
+
+    /**
+     * @param apiDomain Data center.
+     * @return The keys returned by the last successful fetch of the data center, or null.
+     */
+    FetchedJwks getLastFetched(String apiDomain) {
+        return lastFetched.get(apiDomain.toLowerCase(Locale.ENGLISH));
+    }
+
+    private void put(String dc, String kid, String jwk, long ageNanos) {
+        PublicKey publicKey = GSAuthRequestUtils.rsaPublicKeyFromJWKString(jwk);
+        if (publicKey == null)
+            throw new IllegalArgumentException("Invalid JWK for kid " + kid);
+        long fetchedNanos = System.nanoTime() - ageNanos;
+        long ttlNanos = this.ttlNanos;
+        entries.put(cacheKey(dc, kid), new Entry(publicKey, jwk, fetchedNanos + ttlNanos - ttlNanos / 5, fetchedNanos + ttlNanos));
+    }
+
+    /**
+     * @param apiDomain Data center.
+     * @param kid       Key id.
+     * @return The cached JWK of the kid, or null.
+     */
+    public String getJwk(String apiDomain, String kid) {
+        Entry entry = entries.get(cacheKey(apiDomain.toLowerCase(Locale.ENGLISH), kid));
+        return entry != null ? entry.jwk : null;
+    }
+
+    /**
+     * Removes all keys.
+     */
+    public void clear() {
+        entries.clear();
+        lastFetchNanos.clear();
+        lastFetched.clear();
+    }
+
+    /**
+     * Removes the keys of a data center.
+     *
+     * @param apiDomain Data center.
+     */
+    public void clear(String apiDomain) {
+        String dc = apiDomain.toLowerCase(Locale.ENGLISH);
+        entries.keySet().removeIf(key -> key.startsWith(dc + " "));
+        lastFetchNanos.remove(dc);
+        lastFetched.remove(dc);
+    }
+
+    /**
+     * @return The number of fetches of data center keys, for monitoring.
+     */
+    public long getFetchCount() {
+        return fetchCount.get();
+    }
+
+    // The number of cached keys.
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the error of the last fetch if it failed or returned an invalid key, or null if it succeeded
+     */
+    public Exception getLastFetchError() {
+        return lastFetchError;
+    }
+
+    // Removes the expired keys of a data center that its keys no longer include.
+    private void removeExpired(String dc, Set<String> kids) {
+        final String prefix = cacheKey(dc, "");
+        final long now = System.nanoTime();
+        for (Map.Entry<String, Entry> cached : entries.entrySet()) {
+            final String key = cached.getKey();
+            if (key.startsWith(prefix) && !kids.contains(key.substring(prefix.length()))
+                    && now - cached.getValue().expiresNanos >= 0)
+                entries.remove(key, cached.getValue());
+        }
+    }
+
+    private boolean fetchedRecently(String dc, long now) {
+        Long last = lastFetchNanos.get(dc);
+        return last != null && now - last < minFetchIntervalNanos;
+    }
+
+    private void refreshInBackground(final String apiKey, final String apiDomain) {
+        final String dc = apiDomain.toLowerCase(Locale.ENGLISH);
+        if (backgroundRefreshes.putIfAbsent(dc, Boolean.TRUE) != null)
+            return;
+        try {
+            GSExecutors.getDefaultExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        refresh(apiKey, apiDomain);
+                    } finally {
+                        backgroundRefreshes.remove(dc);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // refreshed by a request once the key expires
+            backgroundRefreshes.remove(dc);
+        }
+    }
+
+    private static String cacheKey(String dc, String kid) {
+        return dc + " " + kid;
+    }
+
+    /**
+     * The keys returned by one fetch of a data center.
+     */
+    static final class FetchedJwks {
+        final Map<String, String> jwks; // by kid
+        final long fetchedAtMS;
+
+        FetchedJwks(Map<String, String> jwks, long fetchedAtMS) {
+            this.jwks = Collections.unmodifiableMap(jwks);
+            this.fetchedAtMS = fetchedAtMS;
+        }
+    }
+
+    private static class Entry {
+        final PublicKey publicKey;
+        final String jwk;
+        final long refreshNanos;
+        final long expiresNanos;
+
+        Entry(PublicKey publicKey, String jwk, long refreshNanos, long expiresNanos) {
+            this.publicKey = publicKey;
+            this.jwk = jwk;
+            this.refreshNanos = refreshNanos;
+            this.expiresNanos = expiresNanos;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.gigya.auth;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GSJwksRefresher - Keeps the public keys of a set of data centers in a {@link GSJwksCache} up to date, so
+ * {@link GSAuthRequestUtils#validateSignature} never blocks on fetching keys.
+ * <p>
+ * The keys are fetched on a background thread when the refresher is started, and again at every refresh interval,
+ * which should be shorter than the cache TTL. Optionally, the keys of the last successful fetch are saved to a file
+ * with their fetch time and loaded on the next start, so tokens can be validated before the first fetch completes.
+ * Loaded keys expire at the end of the TTL of their original fetch. Failures are returned by {@link #getLastError()}.
+ * <pre>
+ * GSJwksRefresher refresher = new GSJwksRefresher();
+ * refresher.addDataCenter(apiKey, "us1.gigya.com");
+ * refresher.setPersistenceFile(new File("/var/cache/app/jwks.json"));
+ * refresher.prefetch(); // optional, blocks until the keys are fetched
+ * refresher.start();
+ * </pre>
+ */
+public class GSJwksRefresher implements Closeable {
+
+    public static final long DEFAULT_REFRESH_INTERVAL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final GSJwksCache cache;
+    private final List<String[]> dataCenters = new ArrayList<>();
+    private long refreshIntervalMS = DEFAULT_REFRESH_INTERVAL_MS;
+    private File persistenceFile;
+    private ScheduledExecutorService scheduler;
+    private boolean loaded;
+    private boolean prefetched;
+    private volatile Exception lastError;
+
+    /**
+     * Refreshes the cache used by {@link GSAuthRequestUtils#validateSignature}.
+     */
+    public GSJwksRefresher() {
+        this(GSAuthRequestUtils.getJwksCache());
+    }
+
+    /**
+     * @param cache The cache to refresh.
+     */
+    public GSJwksRefresher(GSJwksCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * @param apiKey    Site ApiKey, used to fetch the keys.
+     * @param apiDomain Data center.
+     */
+    public synchronized void addDataCenter(String apiKey, String apiDomain) {
+        dataCenters.add(new String[]{apiKey, apiDomain});
+    }
+
+    /**
+     * @param refreshIntervalMS Time between refreshes, in milliseconds. Should be shorter than the cache TTL.
+     */
+    public synchronized void setRefreshInterval(long refreshIntervalMS) {
+        if (refreshIntervalMS <= 0)
+            throw new IllegalArgumentException("refreshIntervalMS must be positive");
+        this.refreshIntervalMS = refreshIntervalMS;
+    }
+
+    /**
+     * @param persistenceFile File the keys of the last successful fetch are saved to after each refresh, and loaded
+     *                        from on start.
+     */
+    public synchronized void setPersistenceFile(File persistenceFile) {
+        this.persistenceFile = persistenceFile;
+    }
+
+    /**
+     * Loads the persisted keys and fetches the keys of all data centers on the calling thread.
+     *
+     * @return True if the keys of all data centers were fetched.
+     */
+    public synchronized boolean prefetch() {
+        load();
+        prefetched = true;
+        return refreshAll();
+    }
+
+    /**
+     * Loads the persisted keys and starts refreshing in the background. Unless {@link #prefetch()} was called, the
+     * first refresh starts immediately.
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+        load();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "gigya-jwks-refresher");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::refreshAll, prefetched ? refreshIntervalMS : 0, refreshIntervalMS,
+                TimeUnit.MILLISECONDS);
+        scheduler = executor;
+    }
+
+    /**
+     * @return the error of the last refresh, or of loading or saving the persisted keys, if it failed, or null if
+     * the last refresh succeeded
+     */
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Stops refreshing. The cached keys are kept.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    private boolean refreshAll() {
+        final List<String[]> dataCenters;
+        final File file;
+        synchronized (this) {
+            dataCenters = new ArrayList<>(this.dataCenters);
+            file = persistenceFile;
+        }
+
+        boolean fetchedAll = true;
+        Exception error = null;
+        for (String[] dataCenter : dataCenters) {
+            try {
+                if (!cache.refresh(dataCenter[0], dataCenter[1])) {
+                    fetchedAll = false;
+                    error = cache.getLastFetchError();
+                }
+            } catch (RuntimeException e) {
+                // keep the schedule running
+                fetchedAll = false;
+                error = e;
+            }
+        }
+        if (file != null) {
+            try {
+                save(file, dataCenters);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        lastError = error;
+        return fetchedAll;
+    }
+
+    private void load() {
+        if (loaded || persistenceFile == null || !persistenceFile.isFile())
+            return;
+        loaded = true;
+        try {
+            final JSONObject saved = new JSONObject(new String(Files.readAllBytes(persistenceFile.toPath()), StandardCharsets.UTF_8));
+            for (String apiDomain : saved.keySet()) {
+                final JSONObject fetch = saved.optJSONObject(apiDomain);
+                if (fetch == null)
+                    continue;
+                final JSONArray keys = fetch.getJSONArray("keys");
+                final Map<String, String> jwks = new HashMap<>();
+                for (int i = 0; i < keys.length(); i++) {
+                    final JSONObject jwk = keys.getJSONObject(i);
+                    jwks.put(jwk.getString("kid"), jwk.toString());
+                }
+                // loaded keys only live for the rest of the TTL of the fetch they come from
+                cache.putFetched(apiDomain, new GSJwksCache.FetchedJwks(jwks, fetch.getLong("fetchedAt")));
+            }
+        } catch (Exception e) {
+            lastError = e;
+        }
+    }
+
+    // Saves the keys of the last successful fetch of each data center, so keys the server dropped are not kept.
+    private void save(File file, List<String[]> dataCenters) throws IOException {
+        final JSONObject saved = new JSONObject();
+        for (String[] dataCenter : dataCenters) {
+            final String apiDomain = dataCenter[1].toLowerCase(Locale.ENGLISH);
+            final GSJwksCache.FetchedJwks fetched = cache.getLastFetched(apiDomain);
+            if (fetched == null)
+                continue;
+            final JSONArray keys = new JSONArray();
+            for (String jwk : fetched.jwks.values())
+                keys.put(new JSONObject(jwk));
+            saved.put(apiDomain, new JSONObject().put("fetchedAt", fetched.fetchedAtMS).put("keys", keys));
+        }
+        // write to a temporary file first, so a crash never leaves a truncated file
+        final File parent = file.getAbsoluteFile().getParentFile();
+        final File temp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            Files.write(temp.toPath(), saved.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+}
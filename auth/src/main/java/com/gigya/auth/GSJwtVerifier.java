@@ -0,0 +1,403 @@
+package com.gigya.auth;
+
+import com.gigya.socialize.GSLogger;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * GSJwtVerifier - Verifies RS256 signed Gigya id tokens without a general purpose JWT parser.
+ * <p>
+ * The token is split once, its signature is verified with a per-thread {@link Signature} instance, and only the
+ * fields needed for validation are read from the header ("alg", "kid") and claims ("iss", "sub", "iat", "exp").
+ * Other members, including nested objects and arrays, are skipped without being materialized.
+ * <p>
+ * Tokens are accepted for 120 seconds after their "exp" claim, as {@link GSAuthRequestUtils#validateSignature} always
+ * did. Servers that want a stricter check can lower the grace period with {@link #setClockSkew(long)}.
+ */
+public final class GSJwtVerifier {
+
+
+    private static final Set<String> HEADER_FIELDS = new HashSet<>(Arrays.asList("alg", "kid"));
+    private static final Set<String> CLAIM_FIELDS = new HashSet<>(Arrays.asList("iss", "sub", "iat", "exp"));
+
+    private static volatile long clockSkewSeconds = 120;
+
+    private static final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+        @Override
+        protected Signature initialValue() {
+            try {
+                return Signature.getInstance("SHA256withRSA");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("SHA256withRSA is not available", e);
+            }
+        }
+    };
+
+    private GSJwtVerifier() {
+    }
+
+    /**
+     * @param clockSkewSeconds Grace period applied to the "exp" claim, in seconds. 120 by default.
+     */
+    public static void setClockSkew(long clockSkewSeconds) {
+        if (clockSkewSeconds < 0)
+            throw new IllegalArgumentException("clockSkewSeconds cannot be negative");
+        GSJwtVerifier.clockSkewSeconds = clockSkewSeconds;
+    }
+
+    public static long getClockSkew() {
+        return clockSkewSeconds;
+    }
+
+    /**
+     * Parses a compact JWS without verifying it.
+     *
+     * @param jwt Json web token.
+     * @return The parsed token.
+     * @throws IllegalArgumentException if the token is malformed.
+     */
+    public static Token parse(String jwt) {
+        if (jwt == null)
+            throw new IllegalArgumentException("JWT is null");
+        final int firstDot = jwt.indexOf('.');
+        final int secondDot = firstDot < 0 ? -1 : jwt.indexOf('.', firstDot + 1);
+        if (secondDot < 0 || jwt.indexOf('.', secondDot + 1) >= 0)
+            throw new IllegalArgumentException("JWT must have three parts");
+
+        final Base64.Decoder decoder = Base64.getUrlDecoder();
+        final Map<String, Object> header = new JsonFields(decode(decoder, jwt.substring(0, firstDot)), HEADER_FIELDS).read();
+        final Map<String, Object> claims = new JsonFields(decode(decoder, jwt.substring(firstDot + 1, secondDot)), CLAIM_FIELDS).read();
+        final byte[] signature = decoder.decode(jwt.substring(secondDot + 1));
+        return new Token(jwt.substring(0, secondDot).getBytes(StandardCharsets.US_ASCII), signature, header, claims);
+    }
+
+    /**
+     * Verify an id token given its public key and the api key it should be issued for.
+     *
+     * @param jwt    JWT token to verify.
+     * @param apiKey Account ApiKey.
+     * @param key    Public key matching the token "kid".
+     * @return UID field (jwt subject) if verified, null otherwise.
+     */
+    public static String verify(String jwt, String apiKey, PublicKey key) {
+        final Token token;
+        try {
+            token = parse(jwt);
+        } catch (IllegalArgumentException e) {
+            GSAuthRequestUtils.logger.write("JWT verification failed - " + e.getMessage());
+            return null;
+        }
+        return verify(token, apiKey, key);
+    }
+
+    /**
+     * Verify a parsed id token given its public key and the api key it should be issued for.
+     *
+     * @param token  Parsed token.
+     * @param apiKey Account ApiKey.
+     * @param key    Public key matching the token "kid".
+     * @return UID field (jwt subject) if verified, null otherwise.
+     */
+    public static String verify(Token token, String apiKey, PublicKey key) {
+        return verify(token, apiKey, key, GSAuthRequestUtils.logger);
+    }
+
+    /**
+     * @param logger Logger for the reason of a failed verification, or null to verify quietly.
+     */
+    static String verify(Token token, String apiKey, PublicKey key, GSLogger logger) {
+        // #1 - Verify the signature. Only RS256 is accepted, whatever the header says.
+        if (!"RS256".equals(token.getAlgorithm())) {
+            log(logger, "JWT verification failed - unsupported alg " + token.getAlgorithm());
+            return null;
+        }
+        if (!verifySignature(token, key)) {
+            log(logger, "JWT verification failed - invalid signature");
+            return null;
+        }
+
+        // #2 - Verify JWT provided api key with input api key.
+        final String issuer = token.getIssuer();
+        if (issuer != null && !issuer.equals("https://fidm.gigya.com/jwt/" + apiKey + "/")) {
+            log(logger, "JWT verification failed - apiKey does not match");
+            return null;
+        }
+
+        // #3 - Verify current time is between iat & exp, with a grace period after exp.
+        final Long iat = token.getIssuedAt();
+        final Long exp = token.getExpiration();
+        final long now = System.currentTimeMillis() / 1000;
+        if (iat == null || exp == null || now < iat || now > exp + clockSkewSeconds) {
+            log(logger, "JWT verification failed - expired");
+            return null;
+        }
+
+        // #4 - The UID is the subject of the jwt.
+        return token.getSubject();
+    }
+
+    private static void log(GSLogger logger, String message) {
+        if (logger != null)
+            logger.write(message);
+    }
+
+    private static boolean verifySignature(Token token, PublicKey key) {
+        final Signature signature = signatures.get();
+        try {
+            signature.initVerify(key);
+            signature.update(token.signingInput);
+            return signature.verify(token.signature);
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    private static String decode(Base64.Decoder decoder, String part) {
+        return new String(decoder.decode(part), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The fields of a parsed, not yet verified, token.
+     */
+    public static final class Token {
+        private final byte[] signingInput;
+        private final byte[] signature;
+        private final Map<String, Object> header;
+        private final Map<String, Object> claims;
+
+        private Token(byte[] signingInput, byte[] signature, Map<String, Object> header, Map<String, Object> claims) {
+            this.signingInput = signingInput;
+            this.signature = signature;
+            this.header = header;
+            this.claims = claims;
+        }
+
+        public String getAlgorithm() {
+            return string(header, "alg");
+        }
+
+        public String getKid() {
+            return string(header, "kid");
+        }
+
+        public String getIssuer() {
+            return string(claims, "iss");
+        }
+
+        public String getSubject() {
+            return string(claims, "sub");
+        }
+
+        /**
+         * @return The "iat" claim in seconds since the epoch, or null.
+         */
+        public Long getIssuedAt() {
+            return number(claims, "iat");
+        }
+
+        /**
+         * @return The "exp" claim in seconds since the epoch, or null.
+         */
+        public Long getExpiration() {
+            return number(claims, "exp");
+        }
+
+        private static String string(Map<String, Object> fields, String name) {
+            final Object value = fields.get(name);
+            return value instanceof String ? (String) value : null;
+        }
+
+        private static Long number(Map<String, Object> fields, String name) {
+            final Object value = fields.get(name);
+            return value instanceof Long ? (Long) value : null;
+        }
+    }
+
+    /**
+     * Reads selected string and numeric members of a JSON object, skipping all others.
+     */
+    private static final class JsonFields {
+        private final String json;
+        private final Set<String> names;
+        private int pos;
+
+        JsonFields(String json, Set<String> names) {
+            this.json = json;
+            this.names = names;
+        }
+
+        Map<String, Object> read() {
+            final Map<String, Object> fields = new HashMap<>();
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+            } else {
+                while (true) {
+                    skipWhitespace();
+                    final String name = readString();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                    if (names.contains(name)) {
+                        final Object value = readScalar();
+                        if (value != null)
+                            fields.put(name, value);
+                    } else {
+                        skipValue();
+                    }
+                    skipWhitespace();
+                    final char c = next();
+                    if (c == '}')
+                        break;
+                    if (c != ',')
+                        throw malformed();
+                }
+            }
+            skipWhitespace();
+            if (pos != json.length())
+                throw malformed();
+            return fields;
+        }
+
+        private Object readScalar() {
+            final char c = peek();
+            if (c == '"')
+                return readString();
+            if (c == '-' || (c >= '0' && c <= '9')) {
+                final int start = pos;
+                skipValue();
+                final String number = json.substring(start, pos);
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    try {
+                        return (long) Double.parseDouble(number);
+                    } catch (NumberFormatException ex) {
+                        throw malformed();
+                    }
+                }
+            }
+            skipValue();
+            return null;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                final char c = next();
+                if (c == '"') {
+                    if (sb == null)
+                        return json.substring(start, pos - 1);
+                    return sb.append(json, start, pos - 1).toString();
+                }
+                if (c == '\\') {
+                    if (sb == null)
+                        sb = new StringBuilder();
+                    sb.append(json, start, pos - 1);
+                    final char escaped = next();
+                    switch (escaped) {
+                        case 'b':
+                            sb.append('\b');
+                            break;
+                        case 'f':
+                            sb.append('\f');
+                            break;
+                        case 'n':
+                            sb.append('\n');
+                            break;
+                        case 'r':
+                            sb.append('\r');
+                            break;
+                        case 't':
+                            sb.append('\t');
+                            break;
+                        case 'u':
+                            if (pos + 4 > json.length())
+                                throw malformed();
+                            try {
+                                sb.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+                            } catch (NumberFormatException e) {
+                                throw malformed();
+                            }
+                            pos += 4;
+                            break;
+                        case '"':
+                        case '\\':
+                        case '/':
+                            sb.append(escaped);
+                            break;
+                        default:
+                            throw malformed();
+                    }
+                    start = pos;
+                }
+            }
+        }
+
+        private void skipValue() {
+            final char c = peek();
+            if (c == '"') {
+                readString();
+            } else if (c == '{' || c == '[') {
+                int depth = 0;
+                do {
+                    final char n = peek();
+                    if (n == '"') {
+                        readString();
+                        continue;
+                    }
+                    pos++;
+                    if (n == '{' || n == '[')
+                        depth++;
+                    else if (n == '}' || n == ']')
+                        depth--;
+                } while (depth > 0);
+            } else {
+                final int start = pos;
+                while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0)
+                    pos++;
+                if (pos == start)
+                    throw malformed();
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < json.length() && " \t\r\n".indexOf(json.charAt(pos)) >= 0)
+                pos++;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected)
+                throw malformed();
+        }
+
+        private char peek() {
+            if (pos >= json.length())
+                throw malformed();
+            return json.charAt(pos);
+        }
+
+        private char next() {
+            final char c = peek();
+            pos++;
+            return c;
+        }
+
+        private IllegalArgumentException malformed() {
+            return new IllegalArgumentException("Malformed JWT JSON at position " + pos);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.gigya.auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GSVerifiedTokenCache - A bounded cache of successfully verified id tokens, so a token presented many times is
+ * verified with RSA only once.
+ * <p>
+ * Entries are keyed by the SHA-256 hash of the token with its api key and data center, so tokens are not kept in
+ * memory. An entry holds the verified UID until the token's "exp" plus the clock skew of
+ * {@link GSJwtVerifier#setClockSkew}. When the cache is full, the least recently used entries are evicted. Hit and
+ * miss counters help sizing the cache.
+ * <pre>
+ * GSAuthRequestUtils.setVerifiedTokenCache(new GSVerifiedTokenCache(10000));
+ * </pre>
+ */
+public class GSVerifiedTokenCache {
+
+    private static final int SEGMENTS = 16;
+
+    private static final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+        @Override
+        protected MessageDigest initialValue() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
+    };
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxSize Maximum number of cached tokens.
+     */
+    public GSVerifiedTokenCache(int maxSize) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("maxSize must be positive");
+        final int segmentSize = (maxSize + SEGMENTS - 1) / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(segmentSize);
+    }
+
+    /**
+     * @param jwt       Id token.
+     * @param apiKey    Client ApiKey.
+     * @param apiDomain Api domain.
+     * @return The UID of the token if it was verified and has not expired, null otherwise.
+     */
+    public String get(String jwt, String apiKey, String apiDomain) {
+        final String key = hash(jwt, apiKey, apiDomain);
+        final Segment segment = segmentFor(key);
+        final long now = System.currentTimeMillis() / 1000;
+        VerifiedToken entry;
+        synchronized (segment) {
+            entry = segment.get(key);
+            if (entry != null && now > entry.expiresAt) {
+                segment.remove(key);
+                entry = null;
+            }
+        }
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.uid;
+    }
+
+    /**
+     * Adds a verified token.
+     *
+     * @param jwt       Id token.
+     * @param apiKey    Client ApiKey.
+     * @param apiDomain Api domain.
+     * @param uid       Verified UID.
+     * @param exp       Token "exp" claim, in seconds since the epoch.
+     */
+    public void put(String jwt, String apiKey, String apiDomain, String uid, long exp) {
+        // accepted as long as GSJwtVerifier would accept it
+        final long expiresAt = exp + GSJwtVerifier.getClockSkew();
+        if (uid == null || System.currentTimeMillis() / 1000 > expiresAt)
+            return;
+        final String key = hash(jwt, apiKey, apiDomain);
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, new VerifiedToken(uid, expiresAt));
+        }
+    }
+
+    /**
+     * Removes all tokens.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return The number of cached tokens, including expired ones not evicted yet.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    private Segment segmentFor(String key) {
+        return segments[(key.hashCode() & 0x7fffffff) % SEGMENTS];
+    }
+
+    private static String hash(String jwt, String apiKey, String apiDomain) {
+        final MessageDigest digest = digests.get();
+        digest.reset();
+        digest.update(String.valueOf(apiKey).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(String.valueOf(apiDomain).toLowerCase(Locale.ENGLISH).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(jwt.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    private static class VerifiedToken {
+        final String uid;
+        final long expiresAt; // seconds
+
+        VerifiedToken(String uid, long expiresAt) {
+            this.uid = uid;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An access ordered map evicting its least recently used entry when full.
+     */
+    @SuppressWarnings("serial")
+    private class Segment extends LinkedHashMap<String, VerifiedToken> {
+        private final int maxSize;
+
+        Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, VerifiedToken> eldest) {
+            if (size() <= maxSize)
+                return false;
+            evictions.increment();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.gigya.auth;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jws;
+import io.jsonwebtoken.Jwts;
+import junit.framework.TestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+
+@RunWith(JUnit4.class)
+public class GSAuthJwtSignerTest extends TestCase {
+
+    private static KeyPair keyPair;
+    private static String privateKey;
+
+    @BeforeClass
+    public static void generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        privateKey = Base64.getEncoder().encodeToString(keyPair.getPrivate().getEncoded());
+    }
+
+    @Test
+    public void testMintsVerifiableJwtPerCallByDefault() {
+        GSAuthJwtSigner signer = new GSAuthJwtSigner("userKey", privateKey);
+
+        String first = signer.getJwt();
+        String second = signer.getJwt();
+
+        assertFalse(first.equals(second));
+        Jws<Claims> jws = Jwts.parser().verifyWith(keyPair.getPublic()).build().parseSignedClaims(first);
+        assertEquals("userKey", jws.getHeader().getKeyId());
+        assertNotNull(jws.getPayload().getIssuedAt());
+    }
+
+    @Test
+    public void testReusesJwtWithinWindow() throws Exception {
+        GSAuthJwtSigner signer = new GSAuthJwtSigner("userKey", privateKey);
+        signer.setReuseWindow(200);
+
+        String first = signer.getJwt();
+        assertEquals(first, signer.getJwt());
+
+        Thread.sleep(250);
+        assertFalse(first.equals(signer.getJwt()));
+    }
+
+    @Test
+    public void testBackgroundRefreshMintsBeforeWindowEnds() throws Exception {
+        GSAuthJwtSigner signer = new GSAuthJwtSigner("userKey", privateKey);
+        signer.setReuseWindow(1000);
+        signer.setBackgroundRefresh(true);
+
+        String first = signer.getJwt();
+        Thread.sleep(850);
+        assertEquals(first, signer.getJwt()); // triggers the refresh
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (first.equals(signer.getJwt()) && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertFalse(first.equals(signer.getJwt()));
+    }
+
+    @Test
+    public void testForKeySharesSignerUntilKeyChanges() throws Exception {
+        GSAuthJwtSigner signer = GSAuthJwtSigner.forKey("shared-user", privateKey);
+        assertSame(signer, GSAuthJwtSigner.forKey("shared-user", privateKey));
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String rotatedKey = Base64.getEncoder().encodeToString(generator.generateKeyPair().getPrivate().getEncoded());
+        GSAuthJwtSigner rotated = GSAuthJwtSigner.forKey("shared-user", rotatedKey);
+        assertNotSame(signer, rotated);
+
+        GSAuthJwtSigner.removeKey("shared-user");
+        assertNotSame(rotated, GSAuthJwtSigner.forKey("shared-user", rotatedKey));
+    }
+
+    @Test
+    public void testSharedSignerNeverReusesJwt() {
+        GSAuthJwtSigner signer = GSAuthJwtSigner.forKey("shared-user", privateKey);
+        try {
+            signer.setReuseWindow(30000);
+            fail("Should not let a shared signer reuse JWTs");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        assertFalse(signer.getJwt().equals(signer.getJwt()));
+    }
+
+    @Test
+    public void testInvalidKeyIsRejected() {
+        try {
+            new GSAuthJwtSigner("userKey", "bm90IGEga2V5");
+            fail("Should reject a private key that cannot be decoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
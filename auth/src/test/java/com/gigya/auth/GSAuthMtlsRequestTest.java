@@ -7,7 +7,10 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 import java.io.IOException;
+import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
@@ -108,6 +111,33 @@ public class GSAuthMtlsRequestTest extends TestCase {
         assertNotNull("Third request should not be null", request3);
     }
 
+    @Test
+    public void testRequestsWithSameConfigShareSSLContext() {
+        MtlsConfig config = MtlsConfig.fromPem(MtlsConfigTest.VALID_CERT_PEM, MtlsConfigTest.VALID_KEY_PEM);
+
+        GSAuthMtlsRequest request1 = new GSAuthMtlsRequest(TEST_API_KEY, "accounts.login", config);
+        GSAuthMtlsRequest request2 = new GSAuthMtlsRequest(TEST_API_KEY, "accounts.getAccountInfo", config);
+
+        assertNotNull(request1.getSSLContext());
+        assertSame("Requests should reuse the config's SSL context", request1.getSSLContext(), request2.getSSLContext());
+    }
+
+    @Test
+    public void testConnectionUsesSocketFactoryOfTheAttemptContext() throws Exception {
+        MtlsConfig config = MtlsConfig.fromPem(MtlsConfigTest.VALID_CERT_PEM, MtlsConfigTest.VALID_KEY_PEM);
+        GSAuthMtlsRequest request = new GSAuthMtlsRequest(TEST_API_KEY, TEST_API_METHOD, config);
+
+        SSLSocketFactory attemptFactory = config.getTlsContext().socketFactory;
+        request.getSSLContext();
+        // a reload between the SSL context and the connection of the same attempt
+        config.reload();
+        HttpsURLConnection conn = (HttpsURLConnection) new URL("https://mtls.us1.gigya.com").openConnection();
+        request.configureConnection(conn);
+
+        assertSame(attemptFactory, conn.getSSLSocketFactory());
+        assertNotSame(config.getSocketFactory(), conn.getSSLSocketFactory());
+    }
+
     @Test
     public void testConfigWithCustomPassword() {
         char[] customPassword = "myCustomPassword123".toCharArray();
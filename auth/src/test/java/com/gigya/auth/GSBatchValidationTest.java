@@ -0,0 +1,64 @@
+package com.gigya.auth;
+
+import io.jsonwebtoken.Jwts;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+@RunWith(JUnit4.class)
+public class GSBatchValidationTest extends TestCase {
+
+    @Test
+    public void testValidatesTokensInInputOrder() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair first = generator.generateKeyPair();
+        KeyPair second = generator.generateKeyPair();
+        GSAuthRequestUtils.addToPublicKeyCache("batch.gigya.com", GSJwksCacheTest.jwk("batch-kid1", first));
+        GSAuthRequestUtils.addToPublicKeyCache("batch.gigya.com", GSJwksCacheTest.jwk("batch-kid2", second));
+
+        List<String> jwts = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            KeyPair keyPair = i % 2 == 0 ? first : second;
+            jwts.add(idToken(i % 2 == 0 ? "batch-kid1" : "batch-kid2", keyPair, "UID-" + i));
+        }
+        jwts.add(idToken("batch-kid1", second, "forged")); // signed with the wrong key
+        jwts.add("not-a-jwt");
+        jwts.add(null);
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> results = GSAuthRequestUtils.validateSignatures(jwts, "apiKey", "batch.gigya.com", pool);
+
+            assertEquals(jwts.size(), results.size());
+            for (int i = 0; i < 200; i++)
+                assertEquals("UID-" + i, results.get(i));
+            assertNull(results.get(200));
+            assertNull(results.get(201));
+            assertNull(results.get(202));
+        } finally {
+            pool.shutdown();
+            GSAuthRequestUtils.clearPublicKeysCache("batch.gigya.com");
+        }
+    }
+
+    private static String idToken(String kid, KeyPair keyPair, String uid) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .header().keyId(kid).and()
+                .issuer("https://fidm.gigya.com/jwt/apiKey/")
+                .subject(uid)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + 300000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+}
@@ -0,0 +1,230 @@
+package com.gigya.auth;
+
+import io.jsonwebtoken.Jwts;
+import junit.framework.TestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class GSJwksCacheTest extends TestCase {
+
+    private static KeyPair first;
+    private static KeyPair second;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        first = generator.generateKeyPair();
+        second = generator.generateKeyPair();
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneFetch() throws Exception {
+        final CountingFetcher fetcher = new CountingFetcher(100);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        final GSJwksCache cache = new GSJwksCache(fetcher);
+
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        List<Future<PublicKey>> results = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            results.add(threads.submit(new Callable<PublicKey>() {
+                public PublicKey call() {
+                    return cache.getPublicKey("kid1", "apiKey", "US1.gigya.com");
+                }
+            }));
+        }
+        for (Future<PublicKey> result : results)
+            assertEquals(first.getPublic(), result.get());
+        threads.shutdown();
+
+        assertEquals(1, fetcher.calls.get());
+    }
+
+    @Test
+    public void testKeysOfDataCenterAreCachedByKid() {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        fetcher.keys.put("kid2", jwk("kid2", second));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+
+        assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+        assertEquals(second.getPublic(), cache.getPublicKey("kid2", "apiKey", "us1.gigya.com"));
+        assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+        assertEquals(1, fetcher.calls.get());
+    }
+
+    @Test
+    public void testUnknownKidsDoNotRefetch() {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.getPublicKey("unknown", "apiKey", "us1.gigya.com"));
+            assertNull(cache.getPublicKey("unknown-" + i, "apiKey", "us1.gigya.com"));
+        }
+        assertEquals(1, fetcher.calls.get());
+        assertEquals(1, cache.size());
+
+        // after the minimum fetch interval, an unknown kid may have been published
+        cache.setMinFetchInterval(0);
+        fetcher.keys.put("kid2", jwk("kid2", second));
+        assertEquals(second.getPublic(), cache.getPublicKey("kid2", "apiKey", "us1.gigya.com"));
+        assertEquals(2, fetcher.calls.get());
+    }
+
+    @Test
+    public void testRotatedKeyIsFetchedAfterMinFetchInterval() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+        cache.setMinFetchInterval(200);
+        GSJwksRefresher refresher = new GSJwksRefresher(cache);
+        refresher.addDataCenter("apiKey", "us1.gigya.com");
+        assertTrue(refresher.prefetch());
+
+        // a new key is published, and a token signed with it arrives within the interval
+        fetcher.keys.put("kid2", jwk("kid2", second));
+        assertNull(cache.getPublicKey("kid2", "apiKey", "us1.gigya.com"));
+        assertNull(cache.getPublicKey("kid2", "apiKey", "us1.gigya.com"));
+        assertEquals(1, fetcher.calls.get());
+
+        Thread.sleep(250);
+        assertEquals(second.getPublic(), cache.getPublicKey("kid2", "apiKey", "us1.gigya.com"));
+        assertEquals(2, fetcher.calls.get());
+    }
+
+    @Test
+    public void testExpiredKeyIsKeptWhileFetchFails() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+        cache.setTtl(50);
+        cache.setMinFetchInterval(0);
+        assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+
+        fetcher.keys = null;
+        Thread.sleep(100);
+
+        assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+        assertEquals(2, fetcher.calls.get());
+    }
+
+    @Test
+    public void testExpiredKeyRespectsMinFetchInterval() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+        cache.setTtl(50);
+        cache.setMinFetchInterval(200);
+        cache.getPublicKey("kid1", "apiKey", "us1.gigya.com");
+
+        fetcher.keys = null;
+        Thread.sleep(250);
+        for (int i = 0; i < 5; i++)
+            assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+        assertEquals(2, fetcher.calls.get());
+
+        // a successful fetch without the expired key drops it
+        fetcher.keys = new HashMap<>();
+        fetcher.keys.put("kid2", jwk("kid2", first));
+        Thread.sleep(250);
+        assertNull(cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+        assertEquals(3, fetcher.calls.get());
+    }
+
+    @Test
+    public void testAgingKeyIsRefreshedInBackground() throws Exception {
+        CountingFetcher fetcher = new CountingFetcher(0);
+        fetcher.keys.put("kid1", jwk("kid1", first));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+        cache.setTtl(500);
+        cache.getPublicKey("kid1", "apiKey", "us1.gigya.com");
+
+        Thread.sleep(450);
+        assertEquals(first.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (fetcher.calls.get() < 2 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(2, fetcher.calls.get());
+    }
+
+    @Test
+    public void testValidateSignatureUsesKeyAddedToCache() {
+        GSAuthRequestUtils.clearPublicKeysCache();
+        GSAuthRequestUtils.addToPublicKeyCache("eu1.gigya.com", jwk("site-kid", first));
+        long now = System.currentTimeMillis();
+        String jwt = Jwts.builder()
+                .header().keyId("site-kid").and()
+                .issuer("https://fidm.gigya.com/jwt/apiKey/")
+                .subject("UID-1")
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + 300000))
+                .signWith(first.getPrivate())
+                .compact();
+
+        assertEquals("UID-1", GSAuthRequestUtils.validateSignature(jwt, "apiKey", "EU1.gigya.com"));
+        GSAuthRequestUtils.clearPublicKeysCache("eu1.gigya.com");
+        assertNull(GSAuthRequestUtils.getJwksCache().getJwk("eu1.gigya.com", "site-kid"));
+    }
+
+    static String jwk(String kid, KeyPair keyPair) {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\",\"kid\":\"" + kid + "\""
+                + ",\"n\":\"" + encoder.encodeToString(unsigned(key.getModulus().toByteArray())) + "\""
+                + ",\"e\":\"" + encoder.encodeToString(unsigned(key.getPublicExponent().toByteArray())) + "\"}";
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        if (bytes.length > 1 && bytes[0] == 0) {
+            byte[] trimmed = new byte[bytes.length - 1];
+            System.arraycopy(bytes, 1, trimmed, 0, trimmed.length);
+            return trimmed;
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the keys of the map, or fails when the map is null, after an optional delay.
+     */
+    static class CountingFetcher implements GSJwksCache.Fetcher {
+        final AtomicInteger calls = new AtomicInteger();
+        private final long delayMS;
+        volatile Map<String, String> keys = new HashMap<>();
+
+        CountingFetcher(long delayMS) {
+            this.delayMS = delayMS;
+        }
+
+        public Map<String, String> fetch(String apiKey, String apiDomain) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(delayMS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return keys == null ? null : new HashMap<>(keys);
+        }
+    }
+}
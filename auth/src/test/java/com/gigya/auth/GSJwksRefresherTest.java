@@ -0,0 +1,137 @@
+package com.gigya.auth;
+
+import junit.framework.TestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+
+@RunWith(JUnit4.class)
+public class GSJwksRefresherTest extends TestCase {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void generateKey() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void testPrefetchesAndRefreshesInBackground() throws Exception {
+        GSJwksCacheTest.CountingFetcher fetcher = new GSJwksCacheTest.CountingFetcher(0);
+        fetcher.keys.put("kid1", GSJwksCacheTest.jwk("kid1", keyPair));
+        GSJwksCache cache = new GSJwksCache(fetcher);
+
+        GSJwksRefresher refresher = new GSJwksRefresher(cache);
+        refresher.addDataCenter("apiKey", "us1.gigya.com");
+        refresher.addDataCenter("apiKey", "eu1.gigya.com");
+        refresher.setRefreshInterval(50);
+        try {
+            assertTrue(refresher.prefetch());
+            assertEquals(2, fetcher.calls.get());
+            assertEquals(keyPair.getPublic(), cache.getPublicKey("kid1", "apiKey", "eu1.gigya.com"));
+            assertEquals(2, fetcher.calls.get());
+
+            refresher.start();
+            long deadline = System.currentTimeMillis() + 2000;
+            while (fetcher.calls.get() < 6 && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertTrue(fetcher.calls.get() >= 6);
+        } finally {
+            refresher.close();
+        }
+    }
+
+    @Test
+    public void testPersistedKeysAreLoadedOnStart() throws Exception {
+        File file = File.createTempFile("jwks", ".json");
+        try {
+            GSJwksCacheTest.CountingFetcher fetcher = new GSJwksCacheTest.CountingFetcher(0);
+            fetcher.keys.put("kid1", GSJwksCacheTest.jwk("kid1", keyPair));
+            GSJwksRefresher refresher = new GSJwksRefresher(new GSJwksCache(fetcher));
+            refresher.addDataCenter("apiKey", "US1.gigya.com");
+            refresher.setPersistenceFile(file);
+            assertTrue(refresher.prefetch());
+
+            // the data center cannot be reached on the next start
+            GSJwksCacheTest.CountingFetcher failing = new GSJwksCacheTest.CountingFetcher(0);
+            failing.keys = null;
+            GSJwksCache cache = new GSJwksCache(failing);
+            GSJwksRefresher restarted = new GSJwksRefresher(cache);
+            restarted.addDataCenter("apiKey", "us1.gigya.com");
+            restarted.setPersistenceFile(file);
+            assertFalse(restarted.prefetch());
+
+            assertEquals(keyPair.getPublic(), cache.getPublicKey("kid1", "apiKey", "us1.gigya.com"));
+            assertEquals(1, failing.calls.get());
+            assertTrue(file.length() > 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testDroppedAndAgedKeysAreNotRestored() throws Exception {
+        File file = File.createTempFile("jwks", ".json");
+        try {
+            GSJwksCacheTest.CountingFetcher fetcher = new GSJwksCacheTest.CountingFetcher(0);
+            fetcher.keys.put("revoked", GSJwksCacheTest.jwk("revoked", keyPair));
+            GSJwksRefresher refresher = new GSJwksRefresher(new GSJwksCache(fetcher));
+            refresher.addDataCenter("apiKey", "us1.gigya.com");
+            refresher.setPersistenceFile(file);
+            assertTrue(refresher.prefetch());
+
+            // the server stops publishing the key
+            fetcher.keys.clear();
+            fetcher.keys.put("kid1", GSJwksCacheTest.jwk("kid1", keyPair));
+            assertTrue(refresher.prefetch());
+            String saved = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertFalse(saved.contains("revoked"));
+            assertTrue(saved.contains("kid1"));
+
+            // keys fetched longer than the TTL ago are not loaded
+            long fetchedAt = System.currentTimeMillis() - GSJwksCache.DEFAULT_TTL_MS - 1000;
+            Files.write(file.toPath(), saved.replaceAll("\"fetchedAt\":\\d+", "\"fetchedAt\":" + fetchedAt)
+                    .getBytes(StandardCharsets.UTF_8));
+            GSJwksCacheTest.CountingFetcher failing = new GSJwksCacheTest.CountingFetcher(0);
+            failing.keys = null;
+            GSJwksCache cache = new GSJwksCache(failing);
+            GSJwksRefresher restarted = new GSJwksRefresher(cache);
+            restarted.addDataCenter("apiKey", "us1.gigya.com");
+            restarted.setPersistenceFile(file);
+            assertFalse(restarted.prefetch());
+            assertNull(cache.getJwk("us1.gigya.com", "kid1"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFailuresAreReportedAsLastError() throws Exception {
+        GSJwksCacheTest.CountingFetcher fetcher = new GSJwksCacheTest.CountingFetcher(0);
+        fetcher.keys = null;
+        GSJwksCache cache = new GSJwksCache(fetcher);
+        cache.setMinFetchInterval(0);
+        GSJwksRefresher refresher = new GSJwksRefresher(cache);
+        refresher.addDataCenter("apiKey", "us1.gigya.com");
+
+        assertFalse(refresher.prefetch());
+        assertNotNull(cache.getLastFetchError());
+        assertSame(cache.getLastFetchError(), refresher.getLastError());
+
+        fetcher.keys = new HashMap<>();
+        fetcher.keys.put("kid1", GSJwksCacheTest.jwk("kid1", keyPair));
+        assertTrue(refresher.prefetch());
+        assertNull(cache.getLastFetchError());
+        assertNull(refresher.getLastError());
+    }
+}
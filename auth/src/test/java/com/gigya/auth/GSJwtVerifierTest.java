@@ -0,0 +1,159 @@
+package com.gigya.auth;
+
+import io.jsonwebtoken.Jwts;
+import junit.framework.TestCase;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(JUnit4.class)
+public class GSJwtVerifierTest extends TestCase {
+
+    private static final String ISSUER = "https://fidm.gigya.com/jwt/apiKey/";
+
+    private static KeyPair keyPair;
+    private static KeyPair otherKeyPair;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        otherKeyPair = generator.generateKeyPair();
+    }
+
+    @Test
+    public void testVerifiesIdToken() {
+        String jwt = idToken(ISSUER, -10, 300);
+
+        GSJwtVerifier.Token token = GSJwtVerifier.parse(jwt);
+        assertEquals("kid1", token.getKid());
+        assertEquals("RS256", token.getAlgorithm());
+        assertEquals(ISSUER, token.getIssuer());
+        assertEquals("UID-1", GSJwtVerifier.verify(jwt, "apiKey", keyPair.getPublic()));
+        assertEquals("UID-1", GSAuthRequestUtils.verifyJwt(jwt, "apiKey", keyPair.getPublic()));
+        assertEquals("kid1", GSAuthRequestUtils.getKidFromJWSHeader(jwt));
+    }
+
+    @Test
+    public void testRejectsInvalidTokens() {
+        String jwt = idToken(ISSUER, -10, 300);
+        assertNull(GSJwtVerifier.verify(jwt, "apiKey", otherKeyPair.getPublic()));
+        assertNull(GSJwtVerifier.verify(jwt, "otherApiKey", keyPair.getPublic()));
+        assertNull(GSJwtVerifier.verify(idToken(ISSUER, -1000, -500), "apiKey", keyPair.getPublic()));
+
+        // claims changed after signing
+        String[] parts = jwt.split("\\.");
+        String forged = parts[0] + "." + encode("{\"sub\":\"UID-2\",\"iss\":\"" + ISSUER + "\",\"iat\":"
+                + now() + ",\"exp\":" + (now() + 300) + "}") + "." + parts[2];
+        assertNull(GSJwtVerifier.verify(forged, "apiKey", keyPair.getPublic()));
+
+        // unsigned token
+        String unsigned = encode("{\"alg\":\"none\",\"kid\":\"kid1\"}") + "." + parts[1] + ".";
+        assertNull(GSJwtVerifier.verify(unsigned, "apiKey", keyPair.getPublic()));
+
+        assertNull(GSJwtVerifier.verify("not-a-jwt", "apiKey", keyPair.getPublic()));
+        assertNull(GSJwtVerifier.verify(parts[0] + "." + parts[1], "apiKey", keyPair.getPublic()));
+    }
+
+    @Test
+    public void testExpiredTokenWithinGracePeriodIsAccepted() {
+        String expired = idToken(ISSUER, -600, -60);
+        assertEquals("UID-1", GSJwtVerifier.verify(expired, "apiKey", keyPair.getPublic()));
+
+        GSJwtVerifier.setClockSkew(0);
+        try {
+            assertNull(GSJwtVerifier.verify(expired, "apiKey", keyPair.getPublic()));
+        } finally {
+            GSJwtVerifier.setClockSkew(120);
+        }
+    }
+
+    @Test
+    public void testTokenIssuedInTheFutureIsRejected() {
+        assertNull(GSJwtVerifier.verify(idToken(ISSUER, 60, 300), "apiKey", keyPair.getPublic()));
+    }
+
+    @Test
+    public void testParsesOnlyNeededClaims() {
+        String header = encode("{ \"kid\" : \"k\\u0069d\\/1\", \"x5c\": [\"a\", {\"b\": [1, 2]}], \"alg\":\"RS256\" }");
+        String claims = encode("{\"nested\":{\"sub\":\"wrong\",\"list\":[\"}\",\"]\"]},\"sub\":\"UID \\\"1\\\"\","
+                + "\"iat\":1.7E9,\"exp\":1700000300,\"email_verified\":true,\"data\":null}");
+        GSJwtVerifier.Token token = GSJwtVerifier.parse(header + "." + claims + ".c2ln");
+
+        assertEquals("kid/1", token.getKid());
+        assertEquals("UID \"1\"", token.getSubject());
+        assertEquals(Long.valueOf(1700000000L), token.getIssuedAt());
+        assertEquals(Long.valueOf(1700000300L), token.getExpiration());
+        assertNull(token.getIssuer());
+
+        try {
+            GSJwtVerifier.parse(encode("{\"kid\":\"kid1\"") + "." + claims + ".c2ln");
+            fail("Should reject a truncated header");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testConcurrentVerification() throws Exception {
+        final List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 8; i++)
+            tokens.add(idToken(ISSUER, -10, 300));
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (final String jwt : tokens) {
+            results.add(threads.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    for (int i = 0; i < 50; i++) {
+                        if (!"UID-1".equals(GSJwtVerifier.verify(jwt, "apiKey", keyPair.getPublic())))
+                            return false;
+                        if (GSJwtVerifier.verify(jwt, "apiKey", otherKeyPair.getPublic()) != null)
+                            return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results)
+            assertTrue(result.get());
+        threads.shutdown();
+    }
+
+    private static String idToken(String issuer, long iatOffsetSeconds, long expOffsetSeconds) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .header().keyId("kid1").and()
+                .issuer(issuer)
+                .subject("UID-1")
+                .claim("email", "user@example.com")
+                .claim("groups", Collections.singletonList("admins"))
+                .issuedAt(new Date(now + iatOffsetSeconds * 1000))
+                .expiration(new Date(now + expOffsetSeconds * 1000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+    }
+
+    private static long now() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    private static String encode(String json) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,78 @@
+package com.gigya.auth;
+
+import io.jsonwebtoken.Jwts;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+
+@RunWith(JUnit4.class)
+public class GSVerifiedTokenCacheTest extends TestCase {
+
+    @Test
+    public void testCachesUntilExpiration() {
+        GSVerifiedTokenCache cache = new GSVerifiedTokenCache(100);
+        long now = System.currentTimeMillis() / 1000;
+
+        assertNull(cache.get("token", "apiKey", "us1.gigya.com"));
+        cache.put("token", "apiKey", "us1.gigya.com", "UID-1", now + 60);
+        cache.put("expired", "apiKey", "us1.gigya.com", "UID-2", now - 200);
+
+        assertEquals("UID-1", cache.get("token", "apiKey", "US1.gigya.com"));
+        assertNull(cache.get("token", "otherApiKey", "us1.gigya.com"));
+        assertNull(cache.get("expired", "apiKey", "us1.gigya.com"));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        GSVerifiedTokenCache cache = new GSVerifiedTokenCache(64);
+        long exp = System.currentTimeMillis() / 1000 + 60;
+
+        for (int i = 0; i < 1000; i++)
+            cache.put("token-" + i, "apiKey", "us1.gigya.com", "UID-" + i, exp);
+
+        assertTrue(cache.size() <= 64);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+        assertEquals("UID-999", cache.get("token-999", "apiKey", "us1.gigya.com"));
+        assertNull(cache.get("token-0", "apiKey", "us1.gigya.com"));
+    }
+
+    @Test
+    public void testValidateSignatureVerifiesTokenOnce() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        long now = System.currentTimeMillis();
+        String jwt = Jwts.builder()
+                .header().keyId("cache-kid").and()
+                .issuer("https://fidm.gigya.com/jwt/apiKey/")
+                .subject("UID-1")
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + 300000))
+                .signWith(keyPair.getPrivate())
+                .compact();
+
+        GSVerifiedTokenCache cache = new GSVerifiedTokenCache(100);
+        GSAuthRequestUtils.setVerifiedTokenCache(cache);
+        try {
+            GSAuthRequestUtils.addToPublicKeyCache("au1.gigya.com", GSJwksCacheTest.jwk("cache-kid", keyPair));
+            assertEquals("UID-1", GSAuthRequestUtils.validateSignature(jwt, "apiKey", "au1.gigya.com"));
+            assertEquals("UID-1", GSAuthRequestUtils.validateSignature(jwt, "apiKey", "au1.gigya.com"));
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            // a token verified with a removed key is verified again
+            GSAuthRequestUtils.clearPublicKeysCache("au1.gigya.com");
+            assertEquals(0, cache.size());
+        } finally {
+            GSAuthRequestUtils.setVerifiedTokenCache(null);
+        }
+    }
+}
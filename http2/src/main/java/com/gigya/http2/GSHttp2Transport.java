@@ -0,0 +1,216 @@
+package com.gigya.http2;
+
+import com.gigya.socialize.GSTransport;
+import com.gigya.socialize.GSTransportRequest;
+import com.gigya.socialize.GSTransportResponse;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A {@link GSTransport} built on a shared {@link HttpClient}. <br/>
+ * Requests to the same data center host (e.g. accounts.us1.gigya.com) are multiplexed as HTTP/2 streams over a
+ * single connection, instead of holding one socket per in-flight request.
+ * HTTP/2 is negotiated during the TLS handshake, so only HTTPS requests are multiplexed: create requests with
+ * useHTTPS=true, as {@link com.gigya.socialize.GSClient} does by default. Plain http requests, the default of the
+ * GSRequest constructors without a useHTTPS argument, are sent with HTTP/1.1, one connection per in-flight request.
+ * The client also falls back to HTTP/1.1 for hosts that do not negotiate HTTP/2.
+ * <p>
+ * Usage:
+ * <pre>
+ * GSRequest.setDefaultTransport(new GSHttp2Transport());
+ * </pre>
+ * Notes:
+ * <ul>
+ * <li>The connect timeout is a property of the HttpClient, set when the transport is created.
+ * The request read timeout bounds the time until the response headers are received.</li>
+ * <li>GSRequest#configureConnection is a URLConnection hook and is not invoked by this transport. Requests with an
+ * SSL context of their own, such as mTLS requests, are sent by a separate client per context. When a certificate is
+ * reloaded, its new context gets a new client; only the {@value #MAX_CLIENTS} most recently used of these clients are
+ * kept, and the others are shut down (on Java 21 and above; before, they are released once unreferenced).</li>
+ * <li>HTTP proxies are supported. HttpClient has no SOCKS support, so requests through a SOCKS proxy fail with an
+ * IOException.</li>
+ * </ul>
+ */
+public class GSHttp2Transport implements GSTransport {
+
+    // Headers managed by HttpClient itself, which refuses to send them.
+    private static final Set<String> RESTRICTED_HEADERS = new HashSet<>(Arrays.asList(
+            "connection", "content-length", "expect", "host", "upgrade"));
+
+    static final int MAX_CLIENTS = 8;
+
+    private final HttpClient client;
+    private final Duration connectTimeout;
+    // the clients of requests with a proxy or SSL context, least recently used first
+    private final Map<List<Object>, HttpClient> clients = new LinkedHashMap<List<Object>, HttpClient>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<Object>, HttpClient> eldest) {
+            if (size() <= MAX_CLIENTS)
+                return false;
+            shutdown(eldest.getValue());
+            return true;
+        }
+    };
+
+    /**
+     * Creates a transport with a new HTTP/2 client using the default connect timeout.
+     */
+    public GSHttp2Transport() {
+        this((Duration) null);
+    }
+
+    /**
+     * Creates a transport with a new HTTP/2 client.
+     *
+     * @param connectTimeout the connect timeout, or null for the system default
+     */
+    public GSHttp2Transport(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.client = newClientBuilder().build();
+    }
+
+    /**
+     * Creates a transport over an existing client, for example to share its connections or executor.
+     *
+     * @param client the client to send requests with
+     */
+    public GSHttp2Transport(HttpClient client) {
+        if (client == null)
+            throw new IllegalArgumentException("HttpClient cannot be null");
+        this.client = client;
+        this.connectTimeout = client.connectTimeout().orElse(null);
+    }
+
+    /**
+     * @return the client used for requests without a proxy
+     */
+    public HttpClient getClient() {
+        return client;
+    }
+
+    @Override
+    public GSTransportResponse send(GSTransportRequest request) throws IOException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(request.getUrl()));
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey().toLowerCase(Locale.ENGLISH)))
+                builder.header(header.getKey(), header.getValue());
+        }
+
+        if (request.getReadTimeoutMS() > 0) {
+            long timeoutMS = request.getReadTimeoutMS();
+            if (request.getConnectTimeoutMS() > 0)
+                timeoutMS += request.getConnectTimeoutMS();
+            builder.timeout(Duration.ofMillis(timeoutMS));
+        }
+
+        HttpRequest.BodyPublisher body = request.getBody() == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofByteArray(request.getBody());
+        builder.method(request.getHttpMethod(), body);
+
+        CompletableFuture<HttpResponse<InputStream>> future =
+                clientFor(request.getProxy(), request.getSSLContext()).sendAsync(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        request.setCancelHandler(() -> future.cancel(true));
+
+        HttpResponse<InputStream> response;
+        try {
+            response = future.get();
+        } catch (CancellationException ex) {
+            throw new IOException("Request cancelled", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof HttpTimeoutException) {
+                SocketTimeoutException timeout = new SocketTimeoutException(cause.getMessage());
+                timeout.initCause(cause);
+                throw timeout;
+            }
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new IOException(cause);
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Request interrupted");
+            interrupted.initCause(ex);
+            throw interrupted;
+        }
+
+        InputStream responseBody = response.body();
+        request.setCancelHandler(() -> {
+            try {
+                responseBody.close();
+            } catch (IOException ignored) {
+            }
+        });
+        return new GSTransportResponse(response.statusCode(), response.headers().map(), responseBody);
+    }
+
+    private HttpClient clientFor(Proxy proxy, SSLContext sslContext) throws IOException {
+        if (proxy != null && proxy.type() == Proxy.Type.DIRECT)
+            proxy = null;
+        if (proxy != null && proxy.type() != Proxy.Type.HTTP)
+            throw new IOException("Unsupported proxy type " + proxy.type() + ", only HTTP proxies are supported");
+        if (proxy == null && sslContext == null)
+            return client;
+
+        synchronized (clients) {
+            return clients.computeIfAbsent(Arrays.asList(proxy, sslContext), key -> {
+                HttpClient.Builder builder = newClientBuilder();
+                if (key.get(0) != null)
+                    builder.proxy(ProxySelector.of((InetSocketAddress) ((Proxy) key.get(0)).address()));
+                if (key.get(1) != null)
+                    builder.sslContext((SSLContext) key.get(1));
+                return builder.build();
+            });
+        }
+    }
+
+    int getClientCount() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+
+    // HttpClient.shutdown() was added in Java 21: in-flight requests complete, then the client's threads and
+    // connections are released. Earlier clients are released when no longer referenced.
+    private static void shutdown(HttpClient client) {
+        try {
+            HttpClient.class.getMethod("shutdown").invoke(client);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+            // before Java 21; the client is dropped either way
+        }
+    }
+
+    private HttpClient.Builder newClientBuilder() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER);
+        if (connectTimeout != null)
+            builder.connectTimeout(connectTimeout);
+        return builder;
+    }
+}
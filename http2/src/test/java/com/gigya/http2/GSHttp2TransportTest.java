@@ -0,0 +1,326 @@
+package com.gigya.http2;
+
+import com.gigya.socialize.GSRequest;
+import com.gigya.socialize.GSResponse;
+import com.gigya.socialize.GSTransportRequest;
+import com.gigya.socialize.GSTransportResponse;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RunWith(JUnit4.class)
+public class GSHttp2TransportTest extends TestCase {
+
+    private HttpServer server;
+    private final AtomicReference<String> receivedBody = new AtomicReference<>();
+    private final AtomicReference<String> receivedPath = new AtomicReference<>();
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            receivedPath.set(exchange.getRequestURI().getPath());
+            receivedBody.set(new String(readAll(exchange.getRequestBody()), StandardCharsets.UTF_8));
+            if (exchange.getRequestURI().getPath().endsWith("slow")) {
+                try {
+                    Thread.sleep(2000);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            byte[] response = "{\"errorCode\":0,\"statusCode\":200,\"UID\":\"u1\"}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSendsRequestThroughHttpClient() {
+        GSRequest request = newRequest("accounts.getAccountInfo");
+        request.setTransport(new GSHttp2Transport());
+        request.setParam("UID", "u1");
+
+        GSResponse response = request.send();
+
+        assertEquals(0, response.getErrorCode());
+        assertEquals("u1", response.getString("UID", null));
+        assertEquals("/accounts.getAccountInfo", receivedPath.get());
+        assertTrue(receivedBody.get().contains("UID=u1"));
+    }
+
+    @Test
+    public void testReadTimeoutIsReportedAsRequestTimeout() {
+        GSRequest request = newRequest("accounts.slow");
+        request.setTransport(new GSHttp2Transport(Duration.ofSeconds(5)));
+
+        GSResponse response = request.send(200);
+
+        assertEquals(504002, response.getErrorCode());
+    }
+
+    @Test
+    public void testClientsPerSslContextAreBounded() throws Exception {
+        GSHttp2Transport transport = new GSHttp2Transport();
+        String url = "http://localhost:" + server.getAddress().getPort() + "/accounts.getAccountInfo";
+        for (int i = 0; i < GSHttp2Transport.MAX_CLIENTS + 4; i++) {
+            // a reloaded certificate comes with a new SSL context
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, null, null);
+            GSTransportRequest request = new GSTransportRequest("POST", url, new HashMap<>(), new byte[0]);
+            request.setSSLContext(sslContext);
+            try (GSTransportResponse response = transport.send(request)) {
+                assertEquals(200, response.getStatusCode());
+            }
+        }
+
+        assertEquals(GSHttp2Transport.MAX_CLIENTS, transport.getClientCount());
+    }
+
+    @Test
+    public void testSocksProxyIsRejected() throws IOException {
+        GSTransportRequest request = new GSTransportRequest("POST", "http://localhost/", new HashMap<>(), new byte[0]);
+        request.setProxy(new Proxy(Proxy.Type.SOCKS, new InetSocketAddress("localhost", 1080)));
+
+        try {
+            new GSHttp2Transport().send(request);
+            fail("Should reject the SOCKS proxy");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("SOCKS"));
+        }
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneConnection() throws Exception {
+        final int streams = 5;
+        File keyStoreFile = File.createTempFile("http2-test", ".p12");
+        keyStoreFile.delete();
+        Http2Server h2 = null;
+        ExecutorService threads = Executors.newFixedThreadPool(streams);
+        try {
+            KeyStore keyStore = selfSignedKeyStore(keyStoreFile);
+            KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keyManagers.init(keyStore, KEY_STORE_PASSWORD);
+            SSLContext serverContext = SSLContext.getInstance("TLS");
+            serverContext.init(keyManagers.getKeyManagers(), null, null);
+            TrustManagerFactory trustManagers = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            trustManagers.init(keyStore);
+            final SSLContext clientContext = SSLContext.getInstance("TLS");
+            clientContext.init(null, trustManagers.getTrustManagers(), null);
+
+            // the server answers the first stream of a connection, then holds the others until all are open at once
+            h2 = new Http2Server(serverContext, streams);
+            final GSHttp2Transport transport = new GSHttp2Transport(Duration.ofSeconds(5));
+            final String url = "https://localhost:" + h2.getPort() + "/accounts.getAccountInfo";
+            assertEquals(200, send(transport, url, clientContext));
+
+            List<Future<Integer>> responses = new ArrayList<>();
+            for (int i = 0; i < streams; i++)
+                responses.add(threads.submit(() -> send(transport, url, clientContext)));
+            for (Future<Integer> response : responses)
+                assertEquals(200, response.get(10, TimeUnit.SECONDS).intValue());
+
+            assertEquals(1, h2.connections.get());
+            assertEquals(streams + 1, h2.completedStreams.get());
+        } finally {
+            threads.shutdownNow();
+            if (h2 != null)
+                h2.close();
+            keyStoreFile.delete();
+        }
+    }
+
+    private static int send(GSHttp2Transport transport, String url, SSLContext sslContext) throws IOException {
+        GSTransportRequest request = new GSTransportRequest("POST", url, new HashMap<>(),
+                "apiKey=key".getBytes(StandardCharsets.UTF_8));
+        request.setSSLContext(sslContext);
+        try (GSTransportResponse response = transport.send(request)) {
+            readAll(response.getBody());
+            return response.getStatusCode();
+        }
+    }
+
+    private static final char[] KEY_STORE_PASSWORD = "changeit".toCharArray();
+
+    private static KeyStore selfSignedKeyStore(File file) throws Exception {
+        String keytool = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", "localhost", "-keyalg", "EC",
+                "-groupname", "secp256r1", "-dname", "CN=localhost", "-ext", "SAN=dns:localhost", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", file.getPath(), "-storepass", new String(KEY_STORE_PASSWORD),
+                "-keypass", new String(KEY_STORE_PASSWORD))
+                .redirectErrorStream(true).start();
+        String output = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8);
+        assertEquals(output, 0, process.waitFor());
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = new FileInputStream(file)) {
+            keyStore.load(in, KEY_STORE_PASSWORD);
+        }
+        return keyStore;
+    }
+
+    /**
+     * A minimal HTTP/2 server over TLS. Request headers are not decoded: every stream is answered with status 200
+     * and a fixed body once the client has sent all of it.
+     */
+    private static class Http2Server implements Closeable {
+        private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        private static final int DATA = 0, HEADERS = 1, SETTINGS = 4, PING = 6;
+        private static final int END_STREAM = 0x1, ACK = 0x1, END_HEADERS = 0x4;
+
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicInteger completedStreams = new AtomicInteger();
+        private final SSLServerSocket serverSocket;
+        private final int heldStreams;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+        Http2Server(SSLContext sslContext, int heldStreams) throws IOException {
+            this.heldStreams = heldStreams;
+            serverSocket = (SSLServerSocket) sslContext.getServerSocketFactory().createServerSocket(0, 50,
+                    InetAddress.getLoopbackAddress());
+            SSLParameters parameters = serverSocket.getSSLParameters();
+            parameters.setApplicationProtocols(new String[]{"h2"});
+            serverSocket.setSSLParameters(parameters);
+            Thread acceptor = new Thread(() -> {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        sockets.add(socket);
+                        connections.incrementAndGet();
+                        Thread connection = new Thread(() -> serve(socket));
+                        connection.setDaemon(true);
+                        connection.start();
+                    }
+                } catch (IOException closed) {
+                    // server closed
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void serve(Socket socket) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                byte[] preface = new byte[PREFACE.length];
+                in.readFully(preface);
+                if (!Arrays.equals(PREFACE, preface))
+                    return;
+                writeFrame(out, SETTINGS, 0, 0, new byte[0]);
+
+                List<Integer> held = new ArrayList<>();
+                boolean first = true;
+                while (true) {
+                    int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                    int type = in.readUnsignedByte();
+                    int flags = in.readUnsignedByte();
+                    int stream = in.readInt() & 0x7fffffff;
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+
+                    if (type == SETTINGS && (flags & ACK) == 0) {
+                        writeFrame(out, SETTINGS, ACK, 0, new byte[0]);
+                    } else if (type == PING && (flags & ACK) == 0) {
+                        writeFrame(out, PING, ACK, 0, payload);
+                    } else if ((type == HEADERS || type == DATA) && (flags & END_STREAM) != 0) {
+                        completedStreams.incrementAndGet();
+                        held.add(stream);
+                        if (first || held.size() == heldStreams) {
+                            for (int id : held)
+                                respond(out, id);
+                            held.clear();
+                            first = false;
+                        }
+                    }
+                }
+            } catch (IOException closed) {
+                // connection closed
+            }
+        }
+
+        private static void respond(OutputStream out, int stream) throws IOException {
+            // 0x88 is the HPACK static table entry of ":status: 200"
+            writeFrame(out, HEADERS, END_HEADERS, stream, new byte[]{(byte) 0x88});
+            writeFrame(out, DATA, END_STREAM, stream, "{\"errorCode\":0}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        private static void writeFrame(OutputStream out, int type, int flags, int stream, byte[] payload) throws IOException {
+            ByteBuffer frame = ByteBuffer.allocate(9 + payload.length);
+            frame.put((byte) (payload.length >>> 16)).put((byte) (payload.length >>> 8)).put((byte) payload.length);
+            frame.put((byte) type).put((byte) flags).putInt(stream).put(payload);
+            out.write(frame.array());
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            for (Socket socket : sockets)
+                socket.close();
+        }
+    }
+
+    private GSRequest newRequest(String apiMethod) {
+        GSRequest request = new GSRequest("apiKey", null, apiMethod, null, false, "userKey");
+        request.setHostOverride("localhost:" + server.getAddress().getPort());
+        return request;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
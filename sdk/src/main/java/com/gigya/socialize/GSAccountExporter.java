@@ -0,0 +1,334 @@
+package com.gigya.socialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Exports accounts to NDJSON files (one JSON record per line), splitting the search into disjoint shards
+ * that are read in parallel. <br/>
+ * Each shard is an accounts.search cursor with its own condition, by default a window of lastUpdatedTimestamp,
+ * and is written to its own file, shard-N.ndjson, in the output directory. After every page, the file is flushed to
+ * disk and a checkpoint file, shard-N.checkpoint, records the file length and the cursor of the next page.
+ * Running the export again over the same directory skips finished shards and resumes the others from their
+ * checkpoint; if a checkpointed cursor has expired, the shard is exported again from its start.
+ * <pre>
+ * GSAccountExporter exporter = new GSAccountExporter(client, Paths.get("/data/export"));
+ * exporter.setFields("UID, profile, data");
+ * exporter.setTimeShards(from, System.currentTimeMillis(), 32);
+ * exporter.setParallelism(8);
+ * long records = exporter.export();
+ * </pre>
+ * Parallelism is limited by the site's allowed API concurrency; combine with a {@link GSRateLimiter} on the client
+ * when needed.
+ */
+public class GSAccountExporter {
+
+    private static final int WRITE_BUFFER_SIZE = 256 * 1024;
+    // the error of a search with an expired or unknown cursorId
+    private static final int INVALID_PARAMETER_VALUE = 400006;
+
+    private final GSClient client;
+    private final Path outputDir;
+    private String apiMethod = "accounts.search";
+    private String from = "accounts";
+    private String fields = "*";
+    private String where = null;
+    private int pageSize = 1000;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private List<String> shards = Collections.singletonList(null);
+
+    /**
+     * @param client    the client sending the searches
+     * @param outputDir the directory of the NDJSON and checkpoint files
+     */
+    public GSAccountExporter(GSClient client, Path outputDir) {
+        this.client = client;
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * @param fields the fields to export, as in the SELECT clause. Default "*"
+     */
+    public void setFields(String fields) {
+        this.fields = fields;
+    }
+
+    /**
+     * @param where a condition applied to all shards, or null
+     */
+    public void setWhere(String where) {
+        this.where = where;
+    }
+
+    /**
+     * @param pageSize the number of records per page
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param parallelism the number of shards exported at the same time
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param apiMethod the search method, accounts.search by default. The query selects from accounts, or from
+     *                  auditLog for audit.search; use {@link #setMethod(String, String)} for ds.search.
+     */
+    public void setMethod(String apiMethod) {
+        if (apiMethod.toLowerCase(Locale.ENGLISH).startsWith("ds."))
+            throw new IllegalArgumentException("The data store type of " + apiMethod + " is required, use setMethod(apiMethod, from)");
+        setMethod(apiMethod, apiMethod.toLowerCase(Locale.ENGLISH).startsWith("audit.") ? "auditLog" : "accounts");
+    }
+
+    /**
+     * @param apiMethod the search method, for example ds.search
+     * @param from      what the query selects from, for example the data store type for ds.search
+     */
+    public void setMethod(String apiMethod, String from) {
+        if (from == null || from.isEmpty())
+            throw new IllegalArgumentException("from is required");
+        this.apiMethod = apiMethod;
+        this.from = from;
+    }
+
+    /**
+     * Splits the export into exactly shardCount windows of lastUpdatedTimestamp, of equal size to within a
+     * millisecond. Accounts updated outside [fromMS, toMS) are not exported. Keep the shards of an export identical
+     * when resuming it.
+     * <p>
+     * The windows are evaluated by each search as it runs, so an account updated during the export moves to a later
+     * window: it is missed if that window was already read or is after toMS, and exported twice if it had already
+     * been read from its first window. Use a toMS before the start of the export and deduplicate by UID, or export
+     * while accounts are not updated, when an exact snapshot is required.
+     *
+     * @param fromMS     the start of the first window, inclusive
+     * @param toMS       the end of the last window, exclusive
+     * @param shardCount the number of windows
+     */
+    public void setTimeShards(long fromMS, long toMS, int shardCount) {
+        if (shardCount < 1 || toMS <= fromMS)
+            throw new IllegalArgumentException("Invalid shards");
+        List<String> conditions = new ArrayList<String>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            long start = fromMS + (toMS - fromMS) * i / shardCount;
+            long end = fromMS + (toMS - fromMS) * (i + 1) / shardCount;
+            conditions.add("lastUpdatedTimestamp >= " + start + " AND lastUpdatedTimestamp < " + end);
+        }
+        this.shards = conditions;
+    }
+
+    /**
+     * Sets custom shard conditions, for example ranges of UID. The conditions must not overlap.
+     *
+     * @param conditions one WHERE condition per shard
+     */
+    public void setShards(List<String> conditions) {
+        if (conditions == null || conditions.isEmpty())
+            throw new IllegalArgumentException("At least one shard is required");
+        this.shards = new ArrayList<String>(conditions);
+    }
+
+    /**
+     * Runs the export, resuming from existing checkpoints. All shards are attempted even if some fail.
+     *
+     * @return the number of records written by this run
+     * @throws IOException          if a shard failed, after all others completed
+     * @throws InterruptedException if interrupted while waiting for the shards
+     */
+    public long export() throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        final AtomicLong total = new AtomicLong();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, shards.size()),
+                new GSExecutors.NamedThreadFactory("gigya-export-", true));
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int i = 0; i < shards.size(); i++) {
+                final int shard = i;
+                futures.add(workers.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        total.addAndGet(exportShard(shard));
+                        return null;
+                    }
+                }));
+            }
+
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    IOException error = ex.getCause() instanceof IOException
+                            ? (IOException) ex.getCause() : new IOException(ex.getCause());
+                    if (failure == null)
+                        failure = error;
+                    else
+                        failure.addSuppressed(error);
+                }
+            }
+            if (failure != null)
+                throw failure;
+            return total.get();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private long exportShard(int shard) throws IOException {
+        Path dataFile = outputDir.resolve("shard-" + shard + ".ndjson");
+        Path checkpointFile = outputDir.resolve("shard-" + shard + ".checkpoint");
+        Checkpoint checkpoint = Checkpoint.read(checkpointFile);
+        if (checkpoint.done)
+            return 0;
+
+        try (FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            try {
+                return exportShard(shard, channel, checkpoint, checkpointFile);
+            } catch (GSCursorIterator.CursorException ex) {
+                if (checkpoint.cursorId == null || checkpoint.pageCompleted || !isInvalidCursor(ex.getResponse()))
+                    throw new IOException("Export of shard " + shard + " failed: " + ex.getMessage(), ex);
+                // the checkpointed cursor expired; export the shard again from its start
+                return exportShard(shard, channel, new Checkpoint(), checkpointFile);
+            }
+        }
+    }
+
+    // Only an expired or unknown cursor restarts a shard; transient errors keep the checkpoint for the next run.
+    // A resumed page is requested with no parameter but the cursorId, so an invalid parameter value is the cursor.
+    private static boolean isInvalidCursor(GSResponse response) {
+        return response != null && response.getErrorCode() == INVALID_PARAMETER_VALUE;
+    }
+
+    private long exportShard(int shard, final FileChannel channel, final Checkpoint checkpoint, final Path checkpointFile) throws IOException {
+        channel.truncate(checkpoint.offset);
+        channel.position(checkpoint.offset);
+
+        GSObject params = new GSObject();
+        StringBuilder query = new StringBuilder("SELECT ").append(fields).append(" FROM ").append(from);
+        String condition = shards.get(shard);
+        if (condition != null || where != null) {
+            query.append(" WHERE ");
+            if (condition != null)
+                query.append('(').append(condition).append(')');
+            if (condition != null && where != null)
+                query.append(" AND ");
+            if (where != null)
+                query.append('(').append(where).append(')');
+        }
+        query.append(" LIMIT ").append(pageSize);
+        params.put("query", query.toString());
+
+        final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+        final long startRecords = checkpoint.records;
+        GSCursorIterator records = new GSCursorIterator(client.newRequest(apiMethod, params), pageSize, checkpoint.cursorId);
+        records.setPageListener(new Consumer<String>() {
+            public void accept(String nextCursorId) {
+                try {
+                    flush(buffer, channel);
+                    channel.force(false);
+                    checkpoint.offset = channel.position();
+                    checkpoint.cursorId = nextCursorId;
+                    checkpoint.done = nextCursorId == null;
+                    checkpoint.pageCompleted = true;
+                    checkpoint.write(checkpointFile);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }
+        });
+
+        try {
+            while (records.hasNext()) {
+                byte[] line = (records.next().toJsonString() + '\n').getBytes(StandardCharsets.UTF_8);
+                if (line.length > buffer.remaining())
+                    flush(buffer, channel);
+                if (line.length > buffer.capacity())
+                    writeFully(ByteBuffer.wrap(line), channel);
+                else
+                    buffer.put(line);
+                checkpoint.records++;
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } finally {
+            records.close();
+        }
+        return checkpoint.records - startRecords;
+    }
+
+    private static void flush(ByteBuffer buffer, FileChannel channel) throws IOException {
+        buffer.flip();
+        writeFully(buffer, channel);
+        buffer.clear();
+    }
+
+    private static void writeFully(ByteBuffer buffer, FileChannel channel) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    private static class Checkpoint {
+        long offset;
+        long records;
+        String cursorId;
+        boolean done;
+        boolean pageCompleted; // a page completed in this run, so the cursor is valid
+
+        static Checkpoint read(Path file) throws IOException {
+            Checkpoint checkpoint = new Checkpoint();
+            if (!Files.exists(file))
+                return checkpoint;
+            Properties properties = new Properties();
+            try (InputStream in = Files.newInputStream(file)) {
+                properties.load(in);
+            }
+            checkpoint.offset = Long.parseLong(properties.getProperty("offset", "0"));
+            checkpoint.records = Long.parseLong(properties.getProperty("records", "0"));
+            checkpoint.cursorId = properties.getProperty("cursorId");
+            checkpoint.done = Boolean.parseBoolean(properties.getProperty("done"));
+            return checkpoint;
+        }
+
+        // Written to a temporary file and moved over the previous checkpoint, so a crash never leaves a partial file.
+        void write(Path file) throws IOException {
+            Properties properties = new Properties();
+            properties.setProperty("offset", Long.toString(offset));
+            properties.setProperty("records", Long.toString(records));
+            properties.setProperty("done", Boolean.toString(done));
+            if (cursorId != null)
+                properties.setProperty("cursorId", cursorId);
+
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, null);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.gigya.socialize;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Sends a large number of requests with a bounded number of requests in flight, streaming back the results. <br/>
+ * The input is consumed lazily: a new request is pulled from the input only when a result is taken and a slot
+ * becomes free, so memory use depends on the in-flight limit and not on the size of the input.
+ * Requests run on their own executor (see {@link GSRequest#sendAsync()}); make sure it allows at least
+ * maxInFlight concurrent requests.
+ * <pre>
+ * GSBulkExecutor bulk = new GSBulkExecutor(50);
+ * Iterator&lt;GSBulkResult&gt; results = bulk.execute(client, "accounts.setAccountInfo", paramsIterator);
+ * while (results.hasNext()) {
+ *     GSBulkResult result = results.next();
+ *     if (result.getResponse().getErrorCode() != 0) ...
+ * }
+ * </pre>
+ * The returned iterators and streams are not thread-safe and should be consumed by a single thread.
+ */
+public class GSBulkExecutor {
+
+    private final int maxInFlight;
+    private boolean ordered = false;
+    private int timeoutMS = -1;
+
+    /**
+     * @param maxInFlight the maximum number of requests sent concurrently
+     */
+    public GSBulkExecutor(int maxInFlight) {
+        if (maxInFlight < 1)
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Determines the order of results. When false (the default) results are returned as soon as they complete.
+     * When true results are returned in input order; a slow request then holds back the results that completed
+     * after it, still without exceeding the in-flight limit.
+     *
+     * @param ordered true to return results in input order
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /**
+     * @param timeoutMS the timeout applied to each request, see {@link GSRequest#send(int)}
+     */
+    public void setTimeout(int timeoutMS) {
+        this.timeoutMS = timeoutMS;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sends the given requests.
+     *
+     * @param requests the requests to send, consumed lazily
+     * @return an iterator over the results
+     */
+    public Iterator<GSBulkResult> execute(Iterator<? extends GSRequest> requests) {
+        return ordered ? new OrderedResults(requests) : new CompletionOrderResults(requests);
+    }
+
+    /**
+     * Sends one request per params object, created with {@link GSClient#newRequest(String, GSObject)}.
+     *
+     * @param client    the client creating the requests
+     * @param apiMethod the API method to call
+     * @param params    the parameters of each request, consumed lazily
+     * @return an iterator over the results
+     */
+    public Iterator<GSBulkResult> execute(final GSClient client, final String apiMethod, final Iterator<GSObject> params) {
+        return execute(new Iterator<GSRequest>() {
+            public boolean hasNext() {
+                return params.hasNext();
+            }
+
+            public GSRequest next() {
+                return client.newRequest(apiMethod, params.next());
+            }
+        });
+    }
+
+    /**
+     * Sends the given requests.
+     *
+     * @param requests the requests to send, consumed lazily
+     * @return a sequential stream of the results
+     */
+    public Stream<GSBulkResult> stream(Stream<? extends GSRequest> requests) {
+        return toStream(execute(requests.iterator()));
+    }
+
+    /**
+     * Sends one request per params object, created with {@link GSClient#newRequest(String, GSObject)}.
+     *
+     * @param client    the client creating the requests
+     * @param apiMethod the API method to call
+     * @param params    the parameters of each request, consumed lazily
+     * @return a sequential stream of the results
+     */
+    public Stream<GSBulkResult> stream(GSClient client, String apiMethod, Stream<GSObject> params) {
+        return toStream(execute(client, apiMethod, params.iterator()));
+    }
+
+    private Stream<GSBulkResult> toStream(Iterator<GSBulkResult> results) {
+        int characteristics = Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, characteristics), false);
+    }
+
+    private abstract class Results implements Iterator<GSBulkResult> {
+        private final Iterator<? extends GSRequest> source;
+        private long nextIndex = 0;
+        int inFlight = 0;
+
+        Results(Iterator<? extends GSRequest> source) {
+            this.source = source;
+        }
+
+        // Keeps up to maxInFlight requests running.
+        void fill() {
+            while (inFlight < maxInFlight && source.hasNext()) {
+                final GSRequest request = source.next();
+                final long index = nextIndex++;
+                inFlight++;
+                submitted(request.sendAsync(timeoutMS).handle(new BiFunction<GSResponse, Throwable, GSBulkResult>() {
+                    public GSBulkResult apply(GSResponse response, Throwable error) {
+                        if (error != null)
+                            response = new GSResponse(request.getMethod(), request.getParams(), 500000, error.toString(), request.getLogger());
+                        return new GSBulkResult(index, request, response);
+                    }
+                }));
+            }
+        }
+
+        abstract void submitted(CompletableFuture<GSBulkResult> result);
+
+        public boolean hasNext() {
+            fill();
+            return inFlight > 0;
+        }
+
+        public GSBulkResult next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            GSBulkResult result = take();
+            inFlight--;
+            return result;
+        }
+
+        abstract GSBulkResult take();
+    }
+
+    private class OrderedResults extends Results {
+        private final ArrayDeque<CompletableFuture<GSBulkResult>> pending = new ArrayDeque<CompletableFuture<GSBulkResult>>();
+
+        OrderedResults(Iterator<? extends GSRequest> source) {
+            super(source);
+        }
+
+        void submitted(CompletableFuture<GSBulkResult> result) {
+            pending.add(result);
+        }
+
+        GSBulkResult take() {
+            return pending.poll().join();
+        }
+    }
+
+    private class CompletionOrderResults extends Results {
+        private final LinkedBlockingQueue<GSBulkResult> completed = new LinkedBlockingQueue<GSBulkResult>();
+
+        CompletionOrderResults(Iterator<? extends GSRequest> source) {
+            super(source);
+        }
+
+        void submitted(CompletableFuture<GSBulkResult> result) {
+            result.whenComplete(new BiConsumer<GSBulkResult, Throwable>() {
+                public void accept(GSBulkResult r, Throwable error) {
+                    completed.add(r);
+                }
+            });
+        }
+
+        GSBulkResult take() {
+            try {
+                return completed.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a bulk result", ex);
+            }
+        }
+    }
+}
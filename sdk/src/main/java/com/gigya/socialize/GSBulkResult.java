@@ -0,0 +1,32 @@
+package com.gigya.socialize;
+
+/**
+ * The outcome of one request sent by {@link GSBulkExecutor}.
+ */
+public class GSBulkResult {
+
+    private final long index;
+    private final GSRequest request;
+    private final GSResponse response;
+
+    GSBulkResult(long index, GSRequest request, GSResponse response) {
+        this.index = index;
+        this.request = request;
+        this.response = response;
+    }
+
+    /**
+     * @return the zero based position of the request in the input
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    public GSRequest getRequest() {
+        return request;
+    }
+
+    public GSResponse getResponse() {
+        return response;
+    }
+}
@@ -0,0 +1,287 @@
+package com.gigya.socialize;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stops sending requests to a host that keeps failing. <br/>
+ * Each resolved host (e.g. accounts.eu1.gigya.com) has its own circuit:
+ * <ul>
+ * <li>CLOSED - requests are sent, and their outcomes are recorded in a window of the most recent requests.
+ * When the window holds at least the minimum number of requests and the failure rate or the timeout rate
+ * reaches its threshold, the circuit opens.</li>
+ * <li>OPEN - requests fail immediately with {@link GSResponse#ERROR_CIRCUIT_OPEN}, without opening a connection.
+ * After the open duration, the circuit becomes half open.</li>
+ * <li>HALF_OPEN - a limited number of probe requests are sent. If all succeed the circuit closes;
+ * if any fails it opens again. Only the outcomes of the probes count, not those of requests sent before the
+ * circuit opened or during an earlier half open period.</li>
+ * </ul>
+ * Failures are connection errors (500000), general server errors (500001), timeouts (504002) and HTTP 5xx responses.
+ * Other error codes are answers from a healthy server and count as successes. Cancelled requests
+ * ({@link GSResponse#ERROR_REQUEST_CANCELLED}), such as the losing attempt of a hedged request, and requests that ran
+ * out of the caller's own deadline ({@link GSRequest#setDeadline}, {@link GSRequest#setTotalTimeout}) say nothing
+ * about the host and are not recorded.
+ * <p>
+ * A circuit breaker is thread-safe and should be shared by all the requests of an application, for example through
+ * {@link GSClient#setCircuitBreaker}.
+ */
+public class GSCircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Returned by {@link #tryAcquire} when the request should fail fast.
+     */
+    public static final long REJECTED = -1;
+
+    private static final int TIMEOUT_ERROR = 504002;
+    private static final long CLOSED_PERMIT = 0;
+
+    private volatile int windowSize = 50;
+    private volatile int minimumRequests = 20;
+    private volatile double failureRateThreshold = 0.5;
+    private volatile double timeoutRateThreshold = 0.5;
+    private volatile long openDurationMS = 30000;
+    private volatile int halfOpenProbes = 3;
+    private volatile GSMetricsListener metricsListener;
+    private final Set<Integer> failureCodes = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+    private final ConcurrentHashMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+    public GSCircuitBreaker() {
+        failureCodes.add(500000);
+        failureCodes.add(500001);
+        failureCodes.add(TIMEOUT_ERROR);
+    }
+
+    /**
+     * @param windowSize      the number of most recent requests the rates are calculated over
+     * @param minimumRequests the minimum number of requests in the window before the circuit may open
+     */
+    public void setWindow(int windowSize, int minimumRequests) {
+        if (windowSize < 1 || minimumRequests < 1 || minimumRequests > windowSize)
+            throw new IllegalArgumentException("Invalid window");
+        this.windowSize = windowSize;
+        this.minimumRequests = minimumRequests;
+        circuits.clear();
+    }
+
+    /**
+     * @param failureRateThreshold the rate of failures, including timeouts, that opens the circuit. Between 0 and 1
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * @param timeoutRateThreshold the rate of timeouts that opens the circuit. Between 0 and 1.
+     *                             Set it below the failure rate to open sooner on timeouts, which hold threads longest
+     */
+    public void setTimeoutRateThreshold(double timeoutRateThreshold) {
+        this.timeoutRateThreshold = timeoutRateThreshold;
+    }
+
+    /**
+     * @param openDurationMS the time an open circuit fails requests before probing the host
+     */
+    public void setOpenDuration(long openDurationMS) {
+        this.openDurationMS = openDurationMS;
+    }
+
+    /**
+     * @param halfOpenProbes the number of successful probes needed to close a half open circuit
+     */
+    public void setHalfOpenProbes(int halfOpenProbes) {
+        if (halfOpenProbes < 1)
+            throw new IllegalArgumentException("halfOpenProbes must be positive");
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    /**
+     * Counts an additional error code as a failure.
+     */
+    public void addFailureCode(int errorCode) {
+        failureCodes.add(errorCode);
+    }
+
+    /**
+     * @param metricsListener receives an event for every state change, or null
+     */
+    public void setMetricsListener(GSMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * @param host the host
+     * @return the state of the host's circuit
+     */
+    public State getState(String host) {
+        Circuit circuit = circuits.get(host);
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    /**
+     * Asks permission to send a request to a host.
+     *
+     * @param host the host
+     * @return the permit of the request, to pass to {@link #onResponse}, or {@link #REJECTED} if the request should
+     * fail fast. The permit of a probe identifies the half open period it was sent in
+     */
+    public long tryAcquire(String host) {
+        return getCircuit(host).tryAcquire();
+    }
+
+    /**
+     * Records the outcome of a request sent with a permit of {@link #tryAcquire}.
+     *
+     * @param host     the host
+     * @param permit   the permit of the request
+     * @param response the response of the request
+     */
+    public void onResponse(String host, long permit, GSResponse response) {
+        int errorCode = response.getErrorCode();
+        if (errorCode == GSResponse.ERROR_REQUEST_CANCELLED) {
+            release(host, permit);
+            return;
+        }
+        boolean timeout = errorCode == TIMEOUT_ERROR;
+        boolean failure = timeout || failureCodes.contains(errorCode) || response.getHttpStatusCode() >= 500;
+        getCircuit(host).record(permit, failure, timeout);
+    }
+
+    /**
+     * Returns a permit of {@link #tryAcquire} for a request that was not sent, or whose outcome says nothing about
+     * the host.
+     *
+     * @param host   the host
+     * @param permit the permit of the request
+     */
+    void release(String host, long permit) {
+        getCircuit(host).release(permit);
+    }
+
+    private Circuit getCircuit(String host) {
+        Circuit circuit = circuits.get(host);
+        if (circuit == null) {
+            circuit = new Circuit(host, windowSize);
+            Circuit existing = circuits.putIfAbsent(host, circuit);
+            if (existing != null)
+                circuit = existing;
+        }
+        return circuit;
+    }
+
+    private class Circuit {
+        private final String host;
+        private final byte[] window; // 0 - success, 1 - failure, 2 - timeout
+        private int position;
+        private int count;
+        private int failures;
+        private int timeouts;
+        private State state = State.CLOSED;
+        private long openedAt;
+        private long generation; // of the current half open period, the permit of its probes
+        private int probesSent;
+        private int probesSucceeded;
+
+        Circuit(String host, int windowSize) {
+            this.host = host;
+            this.window = new byte[windowSize];
+        }
+
+        synchronized State getState() {
+            return state;
+        }
+
+        long tryAcquire() {
+            State from;
+            long permit;
+            synchronized (this) {
+                switch (state) {
+                    case CLOSED:
+                        return CLOSED_PERMIT;
+                    case HALF_OPEN:
+                        if (probesSent >= halfOpenProbes)
+                            return REJECTED;
+                        probesSent++;
+                        return generation;
+                    default:
+                        if (System.nanoTime() - openedAt < openDurationMS * 1000000)
+                            return REJECTED;
+                        from = state;
+                        state = State.HALF_OPEN;
+                        permit = ++generation;
+                        probesSent = 1;
+                        probesSucceeded = 0;
+                }
+            }
+            notifyStateChange(from, State.HALF_OPEN);
+            return permit;
+        }
+
+        synchronized void release(long permit) {
+            if (state == State.HALF_OPEN && permit == generation && probesSent > 0)
+                probesSent--;
+        }
+
+        void record(long permit, boolean failure, boolean timeout) {
+            State from;
+            State to;
+            synchronized (this) {
+                from = state;
+                if (state == State.HALF_OPEN) {
+                    // only the probes of this half open period say whether the host recovered
+                    if (permit == generation) {
+                        if (failure) {
+                            open();
+                        } else if (++probesSucceeded >= halfOpenProbes) {
+                            state = State.CLOSED;
+                            position = count = failures = timeouts = 0;
+                        }
+                    }
+                } else if (state == State.CLOSED) {
+                    add(failure ? (timeout ? 2 : 1) : 0);
+                    if (count >= minimumRequests
+                            && ((double) failures / count >= failureRateThreshold || (double) timeouts / count >= timeoutRateThreshold))
+                        open();
+                }
+                to = state;
+            }
+            if (from != to)
+                notifyStateChange(from, to);
+        }
+
+        private void add(int outcome) {
+            if (count == window.length) {
+                byte evicted = window[position];
+                if (evicted != 0)
+                    failures--;
+                if (evicted == 2)
+                    timeouts--;
+            } else {
+                count++;
+            }
+            window[position] = (byte) outcome;
+            position = (position + 1) % window.length;
+            if (outcome != 0)
+                failures++;
+            if (outcome == 2)
+                timeouts++;
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+
+        private void notifyStateChange(State from, State to) {
+            GSMetricsListener listener = metricsListener;
+            if (listener != null)
+                listener.onCircuitStateChange(host, from, to);
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package com.gigya.socialize;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.Proxy;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived, thread-safe factory of requests for a single site or application key. <br/>
+ * The client holds the credentials, API domain, transport and executor shared by all the requests it creates,
+ * and does the per-key setup (decoding the secret, resolving method hosts) once instead of on every call.
+ * <p>
+ * Create a single client and share it between threads. Requests created by the client are lightweight,
+ * but like any GSRequest, a request should be used by one thread at a time.
+ * <pre>
+ * GSClient client = new GSClient(apiKey, secretKey, "eu1.gigya.com");
+ * GSResponse response = client.newRequest("accounts.getAccountInfo", params).send();
+ * </pre>
+ */
+public class GSClient {
+
+    private static final String DEFAULT_API_DOMAIN = "us1.gigya.com";
+    private static final String[] DEFAULT_WARM_UP_NAMESPACES = {"accounts", "socialize"};
+    private static final int DEFAULT_WARM_UP_TIMEOUT_MS = 10000;
+
+    private final String apiKey;
+    private final String secretKey;
+    private final String userKey;
+    private final String apiDomain;
+    private final GSHmacSigner signer;
+    private final GSLogger logger = new GSLogger();
+    private final ConcurrentHashMap<String, String[]> endpoints = new ConcurrentHashMap<String, String[]>();
+
+    private volatile GSTransport transport;
+    private volatile Executor executor;
+    private volatile Proxy proxy;
+    private volatile GSRateLimiter rateLimiter;
+    private volatile GSRetryPolicy retryPolicy;
+    private volatile GSCircuitBreaker circuitBreaker;
+    private volatile GSHedgingPolicy hedgingPolicy;
+    private volatile boolean useHTTPS = true;
+    private volatile boolean traceEnabled = true;
+    private volatile boolean streamResponses = false;
+    private volatile boolean retainResponseText = false;
+    private volatile int requestCompressionThreshold = -1;
+    private volatile int connectTimeoutMS = -1;
+    private volatile int readTimeoutMS = -1;
+    private volatile long totalTimeoutMS = -1;
+
+    /**
+     * @param apiKey    your Gigya API-Key
+     * @param secretKey your Gigya Secret-Key (Base64 encoded)
+     */
+    public GSClient(String apiKey, String secretKey) {
+        this(apiKey, secretKey, DEFAULT_API_DOMAIN, null);
+    }
+
+    /**
+     * @param apiKey    your Gigya API-Key
+     * @param secretKey your Gigya Secret-Key (Base64 encoded)
+     * @param apiDomain the domain of the data center to be used. For example: "eu1.gigya.com" for Europe data center
+     */
+    public GSClient(String apiKey, String secretKey, String apiDomain) {
+        this(apiKey, secretKey, apiDomain, null);
+    }
+
+    /**
+     * @param apiKey    your Gigya API-Key
+     * @param secretKey your Gigya Secret-Key, or the secret of the administrative user when userKey is provided (Base64 encoded)
+     * @param apiDomain the domain of the data center to be used. For example: "eu1.gigya.com" for Europe data center
+     * @param userKey   a key of an administrative user with extra permissions, or null
+     */
+    public GSClient(String apiKey, String secretKey, String apiDomain, String userKey) {
+        this.apiKey = apiKey;
+        this.secretKey = secretKey;
+        this.userKey = userKey;
+        this.apiDomain = apiDomain != null ? apiDomain : DEFAULT_API_DOMAIN;
+        this.signer = newSigner(secretKey);
+    }
+
+    /**
+     * Creates a request for the given API method.
+     *
+     * @param apiMethod the Gigya API method to call, including namespace. For example: "accounts.getAccountInfo"
+     * @return a new request, configured with this client's settings
+     */
+    public GSRequest newRequest(String apiMethod) {
+        return newRequest(apiMethod, null);
+    }
+
+    /**
+     * Creates a request for the given API method. <br/>
+     * Unlike the GSRequest constructors, the params object is not copied: the request takes ownership of it and
+     * will add the signature fields to it when sent. Do not reuse a params object across requests.
+     *
+     * @param apiMethod the Gigya API method to call, including namespace. For example: "accounts.getAccountInfo"
+     * @param params    the request parameters, or null
+     * @return a new request, configured with this client's settings
+     */
+    public GSRequest newRequest(String apiMethod, GSObject params) {
+        GSRequest request = new GSRequest(apiKey, secretKey, null, apiMethod, null, useHTTPS, userKey);
+        if (params != null)
+            request.params = params;
+        configure(request);
+        return request;
+    }
+
+    /**
+     * Opens a cursor over all the records of a search, such as accounts.search, ds.search or audit.search.
+     *
+     * @param apiMethod the search method
+     * @param params    the search parameters, including the query
+     * @return an iterator over the records of all pages. Close it, for example with try-with-resources
+     * @see GSCursorIterator
+     */
+    public GSCursorIterator openCursor(String apiMethod, GSObject params) {
+        return new GSCursorIterator(newRequest(apiMethod, params));
+    }
+
+    /**
+     * Warms up the connections to the data center hosts before traffic arrives, so the first requests after startup
+     * are less likely to pay for DNS resolution and the TCP and TLS handshakes. <br/>
+     * This is a best-effort warm-up: for each host, the given number of HEAD requests to the host root are sent at the
+     * same time, and their connections are released to the transport's connection pool. How many connections are
+     * opened, and how long they stay open, is up to the transport. Call it once at startup, before accepting traffic:
+     * <pre>
+     * GSWarmUpResult result = client.warmUp(4, "accounts", "socialize");
+     * log.info(result.toString());
+     * </pre>
+     * Notes:
+     * <ul>
+     * <li>The JDK keeps at most http.maxConnections (5 by default) idle connections per host, and closes them after
+     * the server's keep-alive timeout, so connections that are not used soon after the warm-up are lost.
+     * {@link GSRequest#ENABLE_CONNECTION_POOLING} must be enabled.</li>
+     * <li>A HEAD response has no body, so its connection returns to the pool as soon as the response arrives. A request
+     * started after another one finished may reuse its connection, so fewer connections than requests may be open.</li>
+     * <li>An HTTP/2 transport multiplexes all requests over one connection per host; one request per host is enough.</li>
+     * <li>Pooled HTTPS connections are only reused by requests with the same SSL settings. The mtls.&lt;dc&gt; hosts
+     * are only warmed with the "mtls" namespace and the SSL settings of the mTLS requests: a configurator applying
+     * their socket factory for URLConnection based transports, or their SSL context for transports such as the HTTP/2
+     * transport. See {@link #warmUp(int, GSConnectionConfigurator, SSLContext, String...)}.</li>
+     * </ul>
+     *
+     * @param requestsPerHost the number of concurrent warm-up requests to send to each host
+     * @param namespaces      the API namespaces whose hosts to warm, such as "accounts" for accounts.&lt;dc&gt;.
+     *                        Defaults to accounts and socialize
+     * @return the time taken and successful requests per host
+     */
+    public GSWarmUpResult warmUp(int requestsPerHost, String... namespaces) {
+        return warmUp(requestsPerHost, null, null, namespaces);
+    }
+
+    /**
+     * Warms up the connections to the data center hosts, configuring each connection first, for example with a client
+     * certificate. See {@link #warmUp(int, String...)}.
+     *
+     * @param requestsPerHost the number of concurrent warm-up requests to send to each host
+     * @param configurator    applied to URLConnection based connections, or null
+     * @param namespaces      the API namespaces whose hosts to warm. Defaults to accounts and socialize
+     * @return the time taken and successful requests per host
+     */
+    public GSWarmUpResult warmUp(int requestsPerHost, GSConnectionConfigurator configurator, String... namespaces) {
+        return warmUp(requestsPerHost, configurator, null, namespaces);
+    }
+
+    /**
+     * Warms up the connections to the data center hosts with the SSL settings of the requests that will use them, for
+     * example those of mTLS requests. See {@link #warmUp(int, String...)}.
+     * <pre>
+     * // with the HTTP/2 transport
+     * client.warmUp(2, null, mtlsConfig.getSSLContext(), "mtls");
+     * </pre>
+     *
+     * @param requestsPerHost the number of concurrent warm-up requests to send to each host
+     * @param configurator    applied to URLConnection based connections, or null
+     * @param sslContext      the SSL context of transports that take one, such as the HTTP/2 transport, or null
+     * @param namespaces      the API namespaces whose hosts to warm. Defaults to accounts and socialize
+     * @return the time taken and successful requests per host
+     */
+    public GSWarmUpResult warmUp(int requestsPerHost, GSConnectionConfigurator configurator, SSLContext sslContext,
+                                 String... namespaces) {
+        if (requestsPerHost < 1)
+            throw new IllegalArgumentException("requestsPerHost must be positive");
+        if (namespaces == null || namespaces.length == 0)
+            namespaces = DEFAULT_WARM_UP_NAMESPACES;
+
+        GSTransport transport = this.transport != null ? this.transport : GSRequest.getDefaultTransport();
+        int connectTimeoutMS = this.connectTimeoutMS != -1 ? this.connectTimeoutMS : DEFAULT_WARM_UP_TIMEOUT_MS;
+        int readTimeoutMS = this.readTimeoutMS != -1 ? this.readTimeoutMS : DEFAULT_WARM_UP_TIMEOUT_MS;
+        int total = requestsPerHost * namespaces.length;
+
+        ExecutorService workers = Executors.newFixedThreadPool(total, new GSExecutors.NamedThreadFactory("gigya-warm-up-", true));
+        long start = System.nanoTime();
+        try {
+            Map<String, List<Future<Long>>> futures = new LinkedHashMap<String, List<Future<Long>>>();
+            for (String namespace : namespaces) {
+                String host = namespace + "." + apiDomain;
+                List<Future<Long>> hostFutures = new ArrayList<Future<Long>>(requestsPerHost);
+                for (int i = 0; i < requestsPerHost; i++) {
+                    GSTransportRequest request = new GSTransportRequest("HEAD", (useHTTPS ? "https://" : "http://") + host + "/", null, null);
+                    request.setProxy(proxy);
+                    request.setConnectTimeoutMS(connectTimeoutMS);
+                    request.setReadTimeoutMS(readTimeoutMS);
+                    request.setConnectionConfigurator(configurator);
+                    request.setSSLContext(sslContext);
+                    hostFutures.add(workers.submit(sendWarmUpRequest(transport, request, start)));
+                }
+                futures.put(host, hostFutures);
+            }
+
+            Map<String, GSWarmUpResult.Host> hosts = new LinkedHashMap<String, GSWarmUpResult.Host>();
+            for (Map.Entry<String, List<Future<Long>>> entry : futures.entrySet()) {
+                int requests = 0;
+                long elapsedMS = 0;
+                Exception failure = null;
+                for (Future<Long> future : entry.getValue()) {
+                    try {
+                        elapsedMS = Math.max(elapsedMS, future.get());
+                        requests++;
+                    } catch (ExecutionException ex) {
+                        if (failure == null)
+                            failure = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+                    }
+                }
+                hosts.put(entry.getKey(), new GSWarmUpResult.Host(entry.getKey(), requests, elapsedMS, failure));
+            }
+            return new GSWarmUpResult(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), hosts);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during warm-up", ex);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Sends the request and returns the milliseconds from start until the response arrived.
+    private static Callable<Long> sendWarmUpRequest(final GSTransport transport, final GSTransportRequest request,
+                                                 final long start) {
+        return new Callable<Long>() {
+            public Long call() throws IOException {
+                GSTransportResponse response = transport.send(request);
+                try {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } finally {
+                    response.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * Applies this client's settings to a request created elsewhere, for example an instance of a GSRequest subclass.
+     *
+     * @param request the request to configure
+     * @return the same request
+     */
+    public <T extends GSRequest> T configure(T request) {
+        request.setAPIDomain(apiDomain);
+        if (transport != null)
+            request.setTransport(transport);
+        if (executor != null)
+            request.setExecutor(executor);
+        if (proxy != null)
+            request.setProxy(proxy);
+        if (rateLimiter != null)
+            request.setRateLimiter(rateLimiter);
+        if (retryPolicy != null)
+            request.setRetryPolicy(retryPolicy);
+        if (circuitBreaker != null)
+            request.setCircuitBreaker(circuitBreaker);
+        if (hedgingPolicy != null)
+            request.setHedgingPolicy(hedgingPolicy);
+        if (!traceEnabled)
+            request.logger = new GSLogger(false);
+        if (connectTimeoutMS != -1)
+            request.setConnectTimeout(connectTimeoutMS);
+        if (readTimeoutMS != -1)
+            request.setReadTimeout(readTimeoutMS);
+        if (totalTimeoutMS != -1)
+            request.setTotalTimeout(totalTimeoutMS);
+        if (requestCompressionThreshold >= 0)
+            request.setRequestCompressionThreshold(requestCompressionThreshold);
+        if (streamResponses) {
+            request.setStreamResponse(true);
+            request.setRetainResponseText(retainResponseText);
+        }
+        if (signer != null && secretKey.equals(request.secretKey))
+            request.signer = signer;
+        if (request.apiMethod != null)
+            request.endpoint = getEndpoint(request.apiMethod);
+        return request;
+    }
+
+    // An invalid secret is logged here once, and again when each request is signed, as with requests created without a client
+    private GSHmacSigner newSigner(String secretKey) {
+        if (secretKey == null)
+            return null;
+        try {
+            return new GSHmacSigner(secretKey);
+        } catch (InvalidKeyException e) {
+            logger.write("Invalid secret key");
+            logger.write(e);
+            return null;
+        }
+    }
+
+    private String[] getEndpoint(String apiMethod) {
+        String[] endpoint = endpoints.get(apiMethod);
+        if (endpoint == null) {
+            endpoint = GSRequest.resolveEndpoint(apiMethod, apiDomain);
+            endpoints.putIfAbsent(apiMethod, endpoint);
+        }
+        return endpoint;
+    }
+
+    /**
+     * @return the messages logged while the client was created, such as an invalid secret key
+     */
+    public String getLog() {
+        return logger.toString();
+    }
+
+    public String getApiKey() {
+        return apiKey;
+    }
+
+    public String getUserKey() {
+        return userKey;
+    }
+
+    public String getAPIDomain() {
+        return apiDomain;
+    }
+
+    public GSTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport used by requests created by this client.
+     *
+     * @param transport the transport, or null to use {@link GSRequest#setDefaultTransport the default transport}
+     */
+    public void setTransport(GSTransport transport) {
+        this.transport = transport;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the executor running asynchronous sends of requests created by this client.
+     *
+     * @param executor the executor
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public GSRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the rate limiter shared by requests created by this client.
+     *
+     * @param rateLimiter the rate limiter, or null to send without limiting
+     */
+    public void setRateLimiter(GSRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public GSRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the retry policy shared by requests created by this client.
+     *
+     * @param retryPolicy the retry policy, or null to retry only on timestamp expiration (403002)
+     */
+    public void setRetryPolicy(GSRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public GSCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Sets the circuit breaker shared by requests created by this client.
+     *
+     * @param circuitBreaker the circuit breaker, or null to always send
+     */
+    public void setCircuitBreaker(GSCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public GSHedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Sets the hedging policy shared by requests created by this client.
+     *
+     * @param hedgingPolicy the hedging policy, or null to never hedge
+     */
+    public void setHedgingPolicy(GSHedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    public void setProxy(Proxy proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * Determines whether requests are sent over HTTPS (the default) or signed and sent over HTTP.
+     */
+    public void setUseHTTPS(boolean useHTTPS) {
+        this.useHTTPS = useHTTPS;
+    }
+
+    /**
+     * Enables or disables the request trace returned by {@link GSResponse#getLog()}.
+     * Disabling it saves formatting the parameters and raw response of every call.
+     */
+    public void setTraceEnabled(boolean traceEnabled) {
+        this.traceEnabled = traceEnabled;
+    }
+
+    /**
+     * Parses JSON responses of requests created by this client directly from the response stream.
+     *
+     * @see GSRequest#setStreamResponse(boolean)
+     */
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * Keeps the raw text of streamed responses, as returned by {@link GSResponse#getResponseText()}.
+     */
+    public void setRetainResponseText(boolean retainResponseText) {
+        this.retainResponseText = retainResponseText;
+    }
+
+    /**
+     * Compresses request bodies of at least the given size.
+     *
+     * @see GSRequest#setRequestCompressionThreshold(int)
+     */
+    public void setRequestCompressionThreshold(int thresholdBytes) {
+        this.requestCompressionThreshold = thresholdBytes;
+    }
+
+    /**
+     * Sets the connect timeout of requests created by this client.
+     *
+     * @see GSRequest#setConnectTimeout(int)
+     */
+    public void setConnectTimeout(int connectTimeoutMS) {
+        this.connectTimeoutMS = connectTimeoutMS;
+    }
+
+    /**
+     * Sets the read timeout of requests created by this client.
+     *
+     * @see GSRequest#setReadTimeout(int)
+     */
+    public void setReadTimeout(int readTimeoutMS) {
+        this.readTimeoutMS = readTimeoutMS;
+    }
+
+    /**
+     * Limits the wall time of each send of requests created by this client, including retries.
+     *
+     * @see GSRequest#setTotalTimeout(long)
+     */
+    public void setTotalTimeout(long totalTimeoutMS) {
+        this.totalTimeoutMS = totalTimeoutMS;
+    }
+}
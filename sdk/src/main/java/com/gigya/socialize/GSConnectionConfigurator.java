@@ -0,0 +1,14 @@
+package com.gigya.socialize;
+
+import java.net.URLConnection;
+
+/**
+ * Callback used by URLConnection based transports to let the request configure the connection before it is sent.
+ */
+public interface GSConnectionConfigurator {
+
+    /**
+     * @param conn the connection that will be used for the request
+     */
+    void configure(URLConnection conn);
+}
@@ -0,0 +1,308 @@
+package com.gigya.socialize;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Iterates over all the records of a cursor paginated search, such as accounts.search, ds.search or audit.search. <br/>
+ * The first page is requested with openCursor=true, and following pages with the returned nextCursorId, until
+ * a page has no next cursor. Each page is fetched by a task on the request's executor, which parses the records one
+ * at a time from the response stream into a bounded buffer, so no page is held in memory as a whole. The next page
+ * is requested as soon as the current one has been read, while its records are still being consumed.
+ * <p>
+ * While the buffer is full, the fetch waits for the consumer, holding its connection and executor thread. A consumer
+ * that takes no record for the stall timeout ({@link #setStallTimeout}) has the fetch abandoned: once it has consumed
+ * the buffered records, {@link #hasNext()} throws a {@link CursorException}.
+ * <pre>
+ * GSObject params = new GSObject();
+ * params.put("query", "SELECT UID, profile.email FROM accounts LIMIT 1000");
+ * try (GSCursorIterator records = client.openCursor("accounts.search", params)) {
+ *     while (records.hasNext())
+ *         export(records.next());
+ * }
+ * </pre>
+ * If a page fails, {@link #hasNext()} throws a {@link CursorException} after the records received so far.
+ * Pages are not retried, since records of a failed page may already have been returned; use
+ * {@link #setPageListener} to checkpoint the cursor and resume from it.
+ * Always close the iterator, or consume it to the end, so the fetch in progress is stopped.
+ */
+public class GSCursorIterator implements Iterator<GSObject>, Closeable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1000;
+    public static final long DEFAULT_STALL_TIMEOUT_MS = 60000;
+
+    private static final Object END = new Object();
+    // how often a waiting fetch or consumer checks whether the other side has gone
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final GSRequest template;
+    private final String startCursorId;
+    private final BlockingQueue<Object> buffer;
+    private volatile long stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_STALL_TIMEOUT_MS);
+    private volatile boolean closed;
+    // set by a fetch that gave up on the consumer, which then puts nothing more in the buffer
+    private volatile CursorException abandoned;
+    private volatile GSRequest currentRequest;
+    private volatile int pages;
+    private Consumer<String> pageListener;
+    private boolean started;
+    private Object next;
+
+    /**
+     * @param request the request of the first page, including the query. It is used as a template and not sent itself
+     */
+    public GSCursorIterator(GSRequest request) {
+        this(request, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param request    the request of the first page, including the query. It is used as a template and not sent itself
+     * @param bufferSize the maximum number of records read ahead of the consumer
+     */
+    public GSCursorIterator(GSRequest request, int bufferSize) {
+        this(request, bufferSize, null);
+    }
+
+    /**
+     * Resumes a cursor from a page returned by an earlier iteration, for example after a restart.
+     * Cursors expire on the server some time after they are opened.
+     *
+     * @param request    the request of the first page, used as a template for the signature and settings
+     * @param bufferSize the maximum number of records read ahead of the consumer
+     * @param cursorId   the cursor of the page to start from, or null to open a new cursor with the request's query
+     */
+    public GSCursorIterator(GSRequest request, int bufferSize, String cursorId) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        this.template = request;
+        this.buffer = new ArrayBlockingQueue<Object>(bufferSize);
+        this.startCursorId = cursorId;
+    }
+
+    /**
+     * Sets a listener called on the consuming thread once all the records of a page have been returned by
+     * {@link #next()}, for example to checkpoint progress. The listener receives the cursor of the next page,
+     * or null after the last page.
+     *
+     * @param pageListener the listener, or null
+     */
+    public void setPageListener(Consumer<String> pageListener) {
+        this.pageListener = pageListener;
+    }
+
+    /**
+     * Sets how long a fetch waits for the consumer to take a record from a full buffer before it is abandoned.
+     *
+     * @param stallTimeoutMS the timeout in milliseconds, {@link #DEFAULT_STALL_TIMEOUT_MS} by default
+     */
+    public void setStallTimeout(long stallTimeoutMS) {
+        if (stallTimeoutMS < 1)
+            throw new IllegalArgumentException("stallTimeoutMS must be positive");
+        this.stallTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(stallTimeoutMS);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null || next instanceof PageEnd) {
+            if (next != null) {
+                String nextCursorId = ((PageEnd) next).nextCursorId;
+                next = null;
+                if (pageListener != null)
+                    pageListener.accept(nextCursorId);
+                continue;
+            }
+            if (closed)
+                return false;
+            if (!started) {
+                started = true;
+                fetch(startCursorId, startCursorId == null);
+            }
+            try {
+                next = take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new CursorException("Interrupted while waiting for records", null);
+            }
+        }
+        if (next instanceof CursorException)
+            throw (CursorException) next;
+        return next != END;
+    }
+
+    @Override
+    public GSObject next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        GSObject record = (GSObject) next;
+        next = null;
+        return record;
+    }
+
+    /**
+     * @return the number of pages fetched so far
+     */
+    public int getPageCount() {
+        return pages;
+    }
+
+    /**
+     * @return a sequential stream of the records. Closing the stream closes this iterator
+     */
+    public Stream<GSObject> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(new Runnable() {
+                    public void run() {
+                        close();
+                    }
+                });
+    }
+
+    /**
+     * Stops fetching pages. Records not yet consumed are discarded.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        GSRequest request = currentRequest;
+        if (request != null)
+            request.cancel();
+        buffer.clear();
+    }
+
+    // Waits for the next item, or for the failure of an abandoned fetch once the buffered items are consumed.
+    private Object take() throws InterruptedException {
+        while (true) {
+            Object item = buffer.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            if (item != null)
+                return item;
+            CursorException failure = abandoned;
+            if (failure != null) {
+                item = buffer.poll();
+                return item != null ? item : failure;
+            }
+        }
+    }
+
+    private void fetch(final String cursorId, final boolean open) {
+        try {
+            template.getExecutor().execute(new Runnable() {
+                public void run() {
+                    fetchPage(cursorId, open);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            put(new CursorException("Request rejected", null));
+        }
+    }
+
+    // Streams the records of a page into the buffer, then requests the next page.
+    private void fetchPage(String cursorId, boolean open) {
+        try {
+            GSRequest request = template.copyRequest();
+            if (open) {
+                request.setParam("openCursor", true);
+            } else {
+                request.clearParams();
+                request.setParam("cursorId", cursorId);
+            }
+            request.streamedArrayKey = "results";
+            request.streamedArrayConsumer = new Consumer<GSObject>() {
+                public void accept(GSObject record) {
+                    if (!put(record))
+                        throw new CancellationException("Cursor closed");
+                }
+            };
+            currentRequest = request;
+
+            GSResponse response = request.send();
+            if (closed || abandoned != null)
+                return;
+            if (response.getErrorCode() != 0) {
+                put(new CursorException(response.getErrorMessage(), response));
+                return;
+            }
+            pages++;
+
+            String next = response.getString("nextCursorId", null);
+            if (next != null && next.length() == 0)
+                next = null;
+            if (!put(new PageEnd(next)))
+                return;
+            if (next == null)
+                put(END);
+            else
+                fetch(next, false);
+        } catch (RuntimeException ex) {
+            if (!closed && abandoned == null)
+                put(new CursorException(ex.toString(), null));
+        } catch (Error ex) {
+            // the consumer gets the failure once it has taken the buffered records, instead of waiting forever
+            if (abandoned == null)
+                abandoned = new CursorException(ex.toString(), null);
+            throw ex;
+        } finally {
+            currentRequest = null;
+        }
+    }
+
+    // Waits for room in the buffer. Returns false if the iterator was closed, or the consumer stalled.
+    private boolean put(Object item) {
+        long stallTimeoutNanos = this.stallTimeoutNanos;
+        long start = System.nanoTime();
+        try {
+            while (!closed) {
+                if (buffer.offer(item, POLL_INTERVAL_MS, TimeUnit.MILLISECONDS))
+                    return true;
+                if (System.nanoTime() - start >= stallTimeoutNanos) {
+                    abandoned = new CursorException("No record consumed for "
+                            + TimeUnit.NANOSECONDS.toMillis(stallTimeoutNanos) + " ms, fetch abandoned", null);
+                    return false;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            abandoned = new CursorException("Interrupted while fetching records", null);
+        }
+        return false;
+    }
+
+    private static class PageEnd {
+        final String nextCursorId;
+
+        PageEnd(String nextCursorId) {
+            this.nextCursorId = nextCursorId;
+        }
+    }
+
+    /**
+     * Thrown by {@link GSCursorIterator#hasNext()} when fetching a page failed.
+     */
+    @SuppressWarnings("serial")
+    public static class CursorException extends RuntimeException {
+        private final transient GSResponse response;
+
+        CursorException(String message, GSResponse response) {
+            super(message);
+            this.response = response;
+        }
+
+        /**
+         * @return the error response of the failed page, or null if the failure was not a response
+         */
+        public GSResponse getResponse() {
+            return response;
+        }
+    }
+}
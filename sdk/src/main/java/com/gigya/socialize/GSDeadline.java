@@ -0,0 +1,65 @@
+package com.gigya.socialize;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a request, including its retries, must complete. <br/>
+ * Deadlines are propagated from a parent context, such as the incoming HTTP request being served, to the
+ * Gigya calls made on its behalf: a child deadline never ends after its parent.
+ * <pre>
+ * GSDeadline deadline = GSDeadline.after(2000);        // the front end's budget for the whole page
+ * request.setDeadline(deadline.child(800));            // at most 800 ms of it for this call
+ * </pre>
+ * When the deadline passes, the attempt in progress is cancelled and the request returns a
+ * "Request Timeout" error (504002). Deadlines are immutable and can be shared between threads.
+ */
+public final class GSDeadline {
+
+    private final long deadlineNanos;
+
+    private GSDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param timeoutMS the time from now until the deadline, in milliseconds
+     * @return a deadline ending the given time from now
+     */
+    public static GSDeadline after(long timeoutMS) {
+        return new GSDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMS));
+    }
+
+    /**
+     * @param timeoutMS the time from now until the child deadline, in milliseconds
+     * @return a deadline ending the given time from now, or with this deadline if that is earlier
+     */
+    public GSDeadline child(long timeoutMS) {
+        long childNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMS);
+        return childNanos - deadlineNanos < 0 ? new GSDeadline(childNanos) : this;
+    }
+
+    /**
+     * @param other another deadline, or null
+     * @return the earlier of this deadline and the other
+     */
+    public GSDeadline min(GSDeadline other) {
+        return other == null || deadlineNanos - other.deadlineNanos <= 0 ? this : other;
+    }
+
+    /**
+     * @return the milliseconds left until the deadline, rounded up, or 0 if it has passed
+     */
+    public long remainingMS() {
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        return remainingNanos <= 0 ? 0 : (remainingNanos + 999999) / 1000000;
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GSDeadline[remaining=" + remainingMS() + "ms]";
+    }
+}
@@ -0,0 +1,209 @@
+package com.gigya.socialize;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory and holder of the executors running asynchronous requests. <br/>
+ * Requests without an executor of their own (see {@link GSRequest#setExecutor} and {@link GSClient#setExecutor})
+ * run on the shared default executor: a bounded pool of threads with a bounded queue. Like the thread per request
+ * the SDK used to start, the pool threads are not daemon threads, so pending listeners run before the JVM exits;
+ * idle threads are released after a second, so they do not keep a program that is done running for long.
+ * {@link #shutdown()} releases them at once. When both are full, new asynchronous requests are rejected and complete
+ * with a {@link GSResponse#ERROR_REQUEST_REJECTED} error response.
+ * <p>
+ * On Java 21 and above, {@link #newVirtualThreadExecutor()} runs each request on its own virtual thread, so the
+ * blocking HTTP I/O of thousands of concurrent requests does not hold platform threads:
+ * <pre>
+ * if (GSExecutors.isVirtualThreadSupported())
+ *     GSExecutors.setDefaultExecutor(GSExecutors.newVirtualThreadExecutor());
+ * </pre>
+ * Synchronous sends need no configuration: {@link GSRequest#send()} may be called directly from virtual threads.
+ */
+public final class GSExecutors {
+
+    public static final int DEFAULT_MAX_THREADS = 64;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+    private static final long KEEP_ALIVE_MS = 1000;
+
+    private static volatile Executor defaultExecutor;
+    private static ThreadPoolExecutor builtInExecutor; // guarded by GSExecutors.class
+    private static volatile ScheduledExecutorService scheduler;
+    private static final Method NEW_VIRTUAL_THREAD_EXECUTOR = findVirtualThreadExecutorFactory();
+
+    private GSExecutors() {
+    }
+
+    /**
+     * Returns the executor used by requests that were not given one. Created on first use with
+     * {@link #DEFAULT_MAX_THREADS} threads and a queue of {@link #DEFAULT_QUEUE_CAPACITY} requests.
+     *
+     * @return the default executor
+     */
+    public static Executor getDefaultExecutor() {
+        Executor executor = defaultExecutor;
+        if (executor == null) {
+            synchronized (GSExecutors.class) {
+                executor = defaultExecutor;
+                if (executor == null) {
+                    builtInExecutor = newBoundedExecutor(DEFAULT_MAX_THREADS, DEFAULT_QUEUE_CAPACITY, new ThreadPoolExecutor.AbortPolicy());
+                    executor = builtInExecutor;
+                    defaultExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Replaces the default executor. The previous executor is not shut down.
+     *
+     * @param executor the new default executor, or null to restore the built-in bounded pool on next use
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Shuts down the built-in default executor once the requests it was given have completed, so its threads do not
+     * keep the JVM running. Requests sent later create a new one. An executor set with {@link #setDefaultExecutor}
+     * is not shut down.
+     */
+    public static void shutdown() {
+        ThreadPoolExecutor executor;
+        synchronized (GSExecutors.class) {
+            executor = builtInExecutor;
+            if (executor == null || defaultExecutor != executor)
+                return;
+            builtInExecutor = null;
+            defaultExecutor = null;
+        }
+        executor.shutdown();
+    }
+
+    /**
+     * Returns the single daemon thread scheduling the SDK's timers, such as hedged requests.
+     * Scheduled tasks must be short; work is handed off to a request executor.
+     *
+     * @return the shared scheduler
+     */
+    static ScheduledExecutorService getScheduler() {
+        ScheduledExecutorService result = scheduler;
+        if (result == null) {
+            synchronized (GSExecutors.class) {
+                result = scheduler;
+                if (result == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+
+                        public Thread newThread(Runnable r) {
+                            return new SchedulerThread(r, "gigya-sdk-scheduler-" + count.incrementAndGet());
+                        }
+                    });
+                    executor.setRemoveOnCancelPolicy(true);
+                    result = executor;
+                    scheduler = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true if called on the scheduler thread, which must never send a request
+     */
+    static boolean isSchedulerThread() {
+        return Thread.currentThread() instanceof SchedulerThread;
+    }
+
+    /**
+     * Creates a bounded pool of non-daemon threads. Idle threads are released after a second.
+     *
+     * @param maxThreads      maximum number of requests sent concurrently
+     * @param queueCapacity   maximum number of requests waiting for a thread
+     * @param rejectionPolicy applied when both threads and queue are full. For example,
+     *                        {@link ThreadPoolExecutor.AbortPolicy} rejects the request, while
+     *                        {@link ThreadPoolExecutor.CallerRunsPolicy} sends it on the calling thread.
+     * @return the executor
+     */
+    public static ThreadPoolExecutor newBoundedExecutor(int maxThreads, int queueCapacity, RejectedExecutionHandler rejectionPolicy) {
+        if (maxThreads < 1)
+            throw new IllegalArgumentException("maxThreads must be positive");
+        if (queueCapacity < 1)
+            throw new IllegalArgumentException("queueCapacity must be positive");
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory("gigya-sdk-", false),
+                rejectionPolicy != null ? rejectionPolicy : new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return true if the running JVM supports virtual threads (Java 21 and above)
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_EXECUTOR != null;
+    }
+
+    /**
+     * Creates an executor that starts a new virtual thread for each request.
+     * The executor is unbounded; limit concurrency at the call site if needed.
+     *
+     * @return the executor
+     * @throws UnsupportedOperationException if the running JVM does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        if (NEW_VIRTUAL_THREAD_EXECUTOR == null)
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or above");
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_EXECUTOR.invoke(null);
+        } catch (Exception ex) {
+            throw new UnsupportedOperationException("Failed to create a virtual thread executor", ex);
+        }
+    }
+
+    // The SDK is compiled for Java 8, so the Java 21 factory is looked up at runtime.
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    private static class SchedulerThread extends Thread {
+        SchedulerThread(Runnable r, String name) {
+            super(r, name);
+            setDaemon(true);
+        }
+    }
+
+    static class NamedThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final boolean daemon;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String prefix, boolean daemon) {
+            this.prefix = prefix;
+            this.daemon = daemon;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, prefix + count.incrementAndGet());
+            t.setDaemon(daemon);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.gigya.socialize;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends a second copy of a slow read request and returns whichever answers first. <br/>
+ * When the first attempt has not answered within the configured percentile of the method's recent latencies,
+ * an identical, separately signed request (with its own timestamp and nonce) is sent. The first response received
+ * from the server wins and the other attempt is cancelled. Connection errors and timeouts do not win while the other
+ * attempt is still running.
+ * <p>
+ * Hedging trades extra load for a shorter latency tail, and is only applied to the registered read methods:
+ * accounts.getAccountInfo, accounts.search and accounts.getSchema by default.
+ * Never register methods with side effects. Cursor requests, with openCursor or cursorId, are never hedged: a hedge
+ * would open a second server-side cursor, or read a page of the same cursor twice.
+ * <p>
+ * Until a method has enough latency samples, the initial delay is used. A policy is thread-safe and should be shared,
+ * for example through {@link GSClient#setHedgingPolicy}, so latencies are learned across requests.
+ */
+public class GSHedgingPolicy {
+
+    private static final int SAMPLES = 256;
+    private static final int RECALCULATE_EVERY = 16;
+
+    private volatile double percentile = 0.95;
+    private volatile long initialDelayMS = 100;
+    private volatile long minDelayMS = 5;
+    private volatile int minSamples = 20;
+    private volatile GSMetricsListener metricsListener;
+    private final Set<String> methods = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentHashMap<String, LatencyTracker> trackers = new ConcurrentHashMap<String, LatencyTracker>();
+
+    public GSHedgingPolicy() {
+        for (String method : Arrays.asList("accounts.getAccountInfo", "accounts.search", "accounts.getSchema"))
+            addMethod(method);
+    }
+
+    /**
+     * @param percentile the latency percentile after which a hedge is sent, for example 0.95
+     */
+    public void setPercentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1)
+            throw new IllegalArgumentException("percentile must be between 0 and 1");
+        this.percentile = percentile;
+        for (LatencyTracker tracker : trackers.values())
+            tracker.invalidate();
+    }
+
+    /**
+     * @param initialDelayMS the hedge delay of methods without enough latency samples
+     * @param minSamples     the number of samples needed before the percentile is used
+     */
+    public void setInitialDelay(long initialDelayMS, int minSamples) {
+        this.initialDelayMS = initialDelayMS;
+        this.minSamples = Math.max(1, Math.min(minSamples, SAMPLES));
+    }
+
+    /**
+     * @param minDelayMS the minimum hedge delay, so fast methods are not hedged on every jitter
+     */
+    public void setMinDelay(long minDelayMS) {
+        this.minDelayMS = minDelayMS;
+    }
+
+    /**
+     * @param metricsListener receives an event for every hedge sent, or null
+     */
+    public void setMetricsListener(GSMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Enables hedging of a read method.
+     *
+     * @param apiMethod the API method, for example "ds.search"
+     */
+    public void addMethod(String apiMethod) {
+        methods.add(key(apiMethod));
+    }
+
+    public void removeMethod(String apiMethod) {
+        methods.remove(key(apiMethod));
+    }
+
+    public boolean isHedged(String apiMethod) {
+        return methods.contains(key(apiMethod));
+    }
+
+    /**
+     * @param apiMethod the API method
+     * @param params    the parameters of the request, or null
+     * @return true if the method is hedged and the request is not a cursor request
+     */
+    public boolean isHedged(String apiMethod, GSObject params) {
+        if (params != null && (params.containsKey("openCursor") || params.containsKey("cursorId")))
+            return false;
+        return isHedged(apiMethod);
+    }
+
+    /**
+     * @param apiMethod the API method
+     * @return the time to wait for the first attempt before sending a hedge
+     */
+    public long getHedgeDelayMS(String apiMethod) {
+        LatencyTracker tracker = trackers.get(key(apiMethod));
+        long delay = tracker != null ? tracker.getPercentileMS() : -1;
+        return Math.max(minDelayMS, delay >= 0 ? delay : initialDelayMS);
+    }
+
+    /**
+     * Records the latency of a completed attempt.
+     *
+     * @param apiMethod    the API method
+     * @param latencyNanos the time from sending the attempt to receiving its response
+     */
+    void recordLatency(String apiMethod, long latencyNanos) {
+        String key = key(apiMethod);
+        LatencyTracker tracker = trackers.get(key);
+        if (tracker == null) {
+            tracker = new LatencyTracker();
+            LatencyTracker existing = trackers.putIfAbsent(key, tracker);
+            if (existing != null)
+                tracker = existing;
+        }
+        tracker.record(latencyNanos);
+    }
+
+    void onHedge(String apiMethod, long delayMS, boolean hedgeWon) {
+        GSMetricsListener listener = metricsListener;
+        if (listener != null)
+            listener.onHedge(apiMethod, delayMS, hedgeWon);
+    }
+
+    // API methods are case insensitive, so "accounts.search" and "Accounts.Search" share their latencies
+    private static String key(String apiMethod) {
+        return apiMethod.toLowerCase(Locale.ENGLISH);
+    }
+
+    private class LatencyTracker {
+        private final long[] samples = new long[SAMPLES];
+        private int count;
+        private int position;
+        private int sinceCalculated;
+        private long percentileMS = -1;
+
+        synchronized void record(long latencyNanos) {
+            samples[position] = latencyNanos;
+            position = (position + 1) % SAMPLES;
+            if (count < SAMPLES)
+                count++;
+            if (++sinceCalculated >= RECALCULATE_EVERY || percentileMS < 0)
+                calculate();
+        }
+
+        synchronized void invalidate() {
+            percentileMS = -1;
+        }
+
+        synchronized long getPercentileMS() {
+            if (percentileMS < 0)
+                calculate();
+            return percentileMS;
+        }
+
+        private void calculate() {
+            if (count < minSamples)
+                return;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+            percentileMS = sorted[Math.max(0, index)] / 1000000;
+            sinceCalculated = 0;
+        }
+    }
+}
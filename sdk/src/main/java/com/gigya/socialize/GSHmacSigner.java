@@ -0,0 +1,177 @@
+package com.gigya.socialize;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/**
+ * Calculates and validates the HMAC signatures of {@link SigUtils} with one secret, without repeating the per call
+ * setup of the static methods. <br/>
+ * The secret is decoded and the {@link Mac} is keyed once, when the signer is created. Each thread then signs with
+ * its own copy of the keyed Mac, into its own output buffer.
+ * A signer is thread-safe; create one per secret and keep it:
+ * <pre>
+ * GSHmacSigner signer = new GSHmacSigner(secretKey);
+ * boolean valid = signer.validateUserSignature(UID, signatureTimestamp, UIDSignature);
+ * </pre>
+ * {@link GSClient} signs all its requests with a signer of its secret.
+ */
+public class GSHmacSigner {
+
+    private static final String DEFAULT_ALGORITHM = "HmacSHA1";
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+    private final ThreadLocal<State> states = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(newMac());
+        }
+    };
+
+    /**
+     * @param secret the Base64 encoded secret, as provided by Gigya
+     * @throws InvalidKeyException if the secret cannot be decoded
+     */
+    public GSHmacSigner(String secret) throws InvalidKeyException {
+        this(DEFAULT_ALGORITHM, decodeSecret(secret));
+    }
+
+    /**
+     * @param algorithmName the algorithm for calculating the signature. The options are: "HmacSHA256" or "HmacSHA1"
+     * @param key           the secret key, Base64 decoded
+     * @throws InvalidKeyException if the key is empty or not suitable for the algorithm
+     */
+    public GSHmacSigner(String algorithmName, byte[] key) throws InvalidKeyException {
+        if (key == null || key.length == 0)
+            throw new InvalidKeyException("Missing or invalid secret");
+        this.key = new SecretKeySpec(key, algorithmName);
+        try {
+            this.prototype = Mac.getInstance(algorithmName);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("Unsupported algorithm " + algorithmName, e);
+        }
+        this.prototype.init(this.key);
+    }
+
+    /**
+     * @param text the string for signing
+     * @return the Base64 encoded signature of the text
+     */
+    public String sign(String text) {
+        final State state = states.get();
+        final Mac mac = state.mac;
+        // String.getBytes is intrinsified, and faster than encoding into a reused buffer
+        mac.update(text.getBytes(StandardCharsets.UTF_8));
+        try {
+            mac.doFinal(state.output, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.encodeToString(state.output, false);
+    }
+
+    /**
+     * @param text      the signed string
+     * @param signature the Base64 encoded signature to validate
+     * @return true if the signature is the signature of the text
+     */
+    public boolean verify(String text, String signature) {
+        if (signature == null)
+            return false;
+        return MessageDigest.isEqual(sign(text).getBytes(StandardCharsets.US_ASCII),
+                signature.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @see SigUtils#validateUserSignature(String, String, String, String)
+     */
+    public boolean validateUserSignature(String UID, String timestamp, String signature) {
+        return verify(timestamp + "_" + UID, signature);
+    }
+
+    /**
+     * @see SigUtils#validateUserSignature(String, String, String, String, int)
+     */
+    public boolean validateUserSignature(String UID, String timestamp, String signature, int expiration) {
+        return !SigUtils.signatureTimestampExpired(timestamp, expiration) && validateUserSignature(UID, timestamp, signature);
+    }
+
+    /**
+     * @see SigUtils#validateFriendSignature(String, String, String, String, String)
+     */
+    public boolean validateFriendSignature(String UID, String timestamp, String friendUID, String signature) {
+        return verify(timestamp + "_" + friendUID + "_" + UID, signature);
+    }
+
+    /**
+     * @see SigUtils#validateFriendSignature(String, String, String, String, String, int)
+     */
+    public boolean validateFriendSignature(String UID, String timestamp, String friendUID, String signature, int expiration) {
+        return !SigUtils.signatureTimestampExpired(timestamp, expiration) && validateFriendSignature(UID, timestamp, friendUID, signature);
+    }
+
+    /**
+     * @see SigUtils#getOAuth1Signature(String, String)
+     */
+    public String getOAuth1Signature(String baseString) {
+        return sign(baseString);
+    }
+
+    /**
+     * @see SigUtils#getDynamicSessionSignature(String, int, String)
+     */
+    public String getDynamicSessionSignature(String glt_cookie, int timeoutInSeconds) {
+        String expirationTimeUnix = String.valueOf(new Date().getTime() / 1000 + timeoutInSeconds);
+        return expirationTimeUnix + '_' + sign(glt_cookie + "_" + expirationTimeUnix);
+    }
+
+    /**
+     * @see SigUtils#getDynamicSessionSignatureUserSigned(String, int, String, String)
+     */
+    public String getDynamicSessionSignatureUserSigned(String glt_cookie, int timeoutInSeconds, String userKey) {
+        String expirationTimeUnix = String.valueOf(new Date().getTime() / 1000 + timeoutInSeconds);
+        return expirationTimeUnix + "_" + userKey + "_" + sign(glt_cookie + "_" + expirationTimeUnix + "_" + userKey);
+    }
+
+    private static byte[] decodeSecret(String secret) throws InvalidKeyException {
+        try {
+            return secret != null ? Base64.decode(secret) : null;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidKeyException("Secret is not Base64 encoded", e);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // providers are not required to support cloning
+            try {
+                Mac mac = Mac.getInstance(prototype.getAlgorithm(), prototype.getProvider());
+                mac.init(key);
+                return mac;
+            } catch (Exception ex) {
+                throw new IllegalStateException("Failed to create " + prototype.getAlgorithm(), ex);
+            }
+        }
+    }
+
+    /**
+     * The keyed Mac and output buffer of one thread.
+     */
+    private static class State {
+        final Mac mac;
+        final byte[] output;
+
+        State(Mac mac) {
+            this.mac = mac;
+            this.output = new byte[mac.getMacLength()];
+        }
+    }
+}
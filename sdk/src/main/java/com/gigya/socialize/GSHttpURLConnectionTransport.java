@@ -0,0 +1,96 @@
+package com.gigya.socialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * The default {@link GSTransport}, sending requests with {@link HttpURLConnection}. <br/>
+ * Connections are reused through the JDK keep-alive cache when {@link GSRequest#ENABLE_CONNECTION_POOLING} is set.
+ */
+public class GSHttpURLConnectionTransport implements GSTransport {
+
+    private static final GSHttpURLConnectionTransport INSTANCE = new GSHttpURLConnectionTransport();
+
+    /**
+     * @return the shared instance used by GSRequest by default
+     */
+    public static GSHttpURLConnectionTransport getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public GSTransportResponse send(GSTransportRequest request) throws IOException {
+        URL url = new URL(request.getUrl());
+        URLConnection conn;
+        if (request.getProxy() == null)
+            conn = url.openConnection();
+        else
+            conn = url.openConnection(request.getProxy());
+
+        final HttpURLConnection httpConn = (HttpURLConnection) conn;
+        request.setCancelHandler(new Runnable() {
+            public void run() {
+                httpConn.disconnect();
+            }
+        });
+        try {
+            if (request.isCancelled())
+                throw new IOException("Request cancelled");
+
+            // Allow the request to configure the connection (e.g., add client certificates)
+            if (request.getConnectionConfigurator() != null)
+                request.getConnectionConfigurator().configure(conn);
+
+            if (request.getConnectTimeoutMS() != -1)
+                conn.setConnectTimeout(request.getConnectTimeoutMS());
+            if (request.getReadTimeoutMS() != -1)
+                conn.setReadTimeout(request.getReadTimeoutMS());
+
+            for (Map.Entry<String, String> entry : request.getHeaders().entrySet()) {
+                conn.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+
+            httpConn.setRequestMethod(request.getHttpMethod());
+            if (request.getBody() != null) {
+                conn.setDoOutput(true);
+                OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(request.getBody());
+                    out.flush();
+                } finally {
+                    out.close();
+                }
+            }
+
+            int statusCode = httpConn.getResponseCode();
+            InputStream input;
+            if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST)
+                input = httpConn.getErrorStream();
+            else
+                input = conn.getInputStream();
+
+            return new GSTransportResponse(statusCode, conn.getHeaderFields(), input) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        if (!GSRequest.ENABLE_CONNECTION_POOLING)
+                            httpConn.disconnect();
+                    }
+                }
+            };
+        } catch (IOException ex) {
+            httpConn.disconnect();
+            throw ex;
+        } catch (RuntimeException ex) {
+            httpConn.disconnect();
+            throw ex;
+        }
+    }
+}
@@ -5,13 +5,30 @@ import java.io.StringWriter;
 
 public class GSLogger {
     private StringBuilder sb = new StringBuilder();
+    private final boolean enabled;
+
+    public GSLogger() {
+        this(true);
+    }
+
+    /**
+     * @param enabled when false, writes are ignored and values are never converted to strings
+     */
+    public GSLogger(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
 
     public void write(Object data) {
-        if (data == null) return;
+        if (data == null || !enabled) return;
         write(null, data.toString());
     }
 
     public void write(Exception ex) {
+        if (!enabled) return;
         StringWriter sw = new StringWriter();
         PrintWriter pw = new PrintWriter(sw);
         ex.printStackTrace(pw);
@@ -19,6 +36,7 @@ public class GSLogger {
     }
 
     public void write(String key, Object data) {
+        if (!enabled) return;
         if (key != null)
             sb.append(key + ": ");
         if (data != null) {
@@ -32,6 +50,7 @@ public class GSLogger {
     }
 
     public void writeFormat(String format, Object... args) {
+        if (!enabled) return;
         write(String.format(format, args));
     }
 
@@ -0,0 +1,48 @@
+package com.gigya.socialize;
+
+/**
+ * Receives metrics events from the SDK. All methods have empty default implementations;
+ * override the ones of interest. Implementations are called on request threads and must be thread-safe and fast.
+ */
+public interface GSMetricsListener {
+
+    /**
+     * Called after a request waited for a rate limiter permit.
+     *
+     * @param apiMethod the API method of the request
+     * @param waitNanos the time spent waiting, zero when a permit was immediately available
+     */
+    default void onRateLimitWait(String apiMethod, long waitNanos) {
+    }
+
+    /**
+     * Called before a failed request is sent again.
+     *
+     * @param apiMethod the API method of the request
+     * @param attempt   the number of the failed attempt, starting at 1
+     * @param errorCode the error code of the failed attempt
+     * @param delayMS   the backoff before the next attempt
+     */
+    default void onRetry(String apiMethod, int attempt, int errorCode, long delayMS) {
+    }
+
+    /**
+     * Called when the circuit of a host changes state.
+     *
+     * @param host the host
+     * @param from the previous state
+     * @param to   the new state
+     */
+    default void onCircuitStateChange(String host, GSCircuitBreaker.State from, GSCircuitBreaker.State to) {
+    }
+
+    /**
+     * Called when a hedged request completes.
+     *
+     * @param apiMethod the API method of the request
+     * @param delayMS   the delay after which the hedge was sent
+     * @param hedgeWon  true if the hedge answered first
+     */
+    default void onHedge(String apiMethod, long delayMS, boolean hedgeWon) {
+    }
+}
@@ -3,12 +3,14 @@ package com.gigya.socialize;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InvalidClassException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.Reader;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.net.MalformedURLException;
@@ -52,6 +54,18 @@ public class GSObject implements Serializable {
         processJsonObject(jo, this);
     }
 
+    /**
+     * Construct a GSObject from JSON read from a character stream, without first reading it into a string.
+     * The reader is not closed.
+     *
+     * @param reader the reader of the JSON formatted text
+     * @throws Exception if unable to read or parse the JSON text
+     */
+    public GSObject(Reader reader) throws Exception {
+        JSONObject jo = new JSONObject(new JSONTokener(reader));
+        processJsonObject(jo, this);
+    }
+
     /**
      * Construct a GSObject from a JSONObject - used internally
      *
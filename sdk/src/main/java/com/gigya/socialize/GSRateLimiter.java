@@ -0,0 +1,236 @@
+package com.gigya.socialize;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client side token bucket rate limiter, applied by {@link GSRequest#send(int)} before a request is dispatched. <br/>
+ * Limits can be set per API key, per namespace (e.g. "accounts", "socialize", "ds", "audit") and per API method
+ * (e.g. "accounts.setAccountInfo"). A request takes a permit from every limit that applies to it and waits
+ * until all of them allow it, so sustained load is smoothed to the configured rate instead of bursting into
+ * server side rate limit errors.
+ * <pre>
+ * GSRateLimiter limiter = new GSRateLimiter();
+ * limiter.setNamespaceLimit("accounts", 200, 50);
+ * limiter.setMethodLimit("accounts.setAccountInfo", 50, 10);
+ * client.setRateLimiter(limiter);
+ * </pre>
+ * A limiter is thread-safe and is meant to be shared by all requests using the same key.
+ */
+public class GSRateLimiter {
+
+    private final ConcurrentHashMap<String, TokenBucket> apiKeyLimits = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentHashMap<String, TokenBucket> namespaceLimits = new ConcurrentHashMap<String, TokenBucket>();
+    private final ConcurrentHashMap<String, TokenBucket> methodLimits = new ConcurrentHashMap<String, TokenBucket>();
+
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong delayedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private volatile GSMetricsListener metricsListener;
+
+    /**
+     * Limits all requests sent with an API key.
+     *
+     * @param apiKey           the API key
+     * @param permitsPerSecond the sustained rate
+     * @param burst            the number of requests that may be sent at once after an idle period
+     */
+    public void setApiKeyLimit(String apiKey, double permitsPerSecond, int burst) {
+        apiKeyLimits.put(apiKey, new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Limits all requests to a namespace.
+     *
+     * @param namespace        the namespace, for example "accounts"
+     * @param permitsPerSecond the sustained rate
+     * @param burst            the number of requests that may be sent at once after an idle period
+     */
+    public void setNamespaceLimit(String namespace, double permitsPerSecond, int burst) {
+        namespaceLimits.put(namespace.toLowerCase(Locale.ENGLISH), new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Limits all requests to an API method.
+     *
+     * @param apiMethod        the API method, including namespace. For example "accounts.getAccountInfo"
+     * @param permitsPerSecond the sustained rate
+     * @param burst            the number of requests that may be sent at once after an idle period
+     */
+    public void setMethodLimit(String apiMethod, double permitsPerSecond, int burst) {
+        methodLimits.put(normalizeMethod(apiMethod), new TokenBucket(permitsPerSecond, burst));
+    }
+
+    /**
+     * Receives the wait time of every acquired permit.
+     */
+    public void setMetricsListener(GSMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Waits until every limit applying to the request allows it.
+     *
+     * @param apiKey    the API key of the request, may be null
+     * @param apiMethod the API method of the request
+     * @return the time waited in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquire(String apiKey, String apiMethod) throws InterruptedException {
+        long waitNanos = reserve(apiKey, apiMethod, Long.MAX_VALUE);
+        if (waitNanos > 0)
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Reserves a permit of every limit applying to the request, for the first time all of them allow it.
+     * The caller must wait for the returned time before sending, for example so it can stop waiting when
+     * the request is cancelled.
+     *
+     * @param apiKey       the API key of the request, may be null
+     * @param apiMethod    the API method of the request
+     * @param maxWaitNanos the longest acceptable wait
+     * @return the time to wait in nanoseconds, or -1 if it would be longer than maxWaitNanos, in which case
+     * no permit is taken
+     */
+    public long reserve(String apiKey, String apiMethod, long maxWaitNanos) {
+        TokenBucket[] buckets = bucketsFor(apiKey, apiMethod);
+
+        long now = System.nanoTime();
+        long slot = now;
+        // the request is sent when the slowest limit allows it, and every limit is charged for that time
+        synchronized (this) {
+            for (TokenBucket bucket : buckets) {
+                if (bucket != null)
+                    slot = Math.max(slot, bucket.nextFree(now));
+            }
+            if (slot - now > maxWaitNanos)
+                return -1;
+            for (TokenBucket bucket : buckets) {
+                if (bucket != null)
+                    bucket.take(slot);
+            }
+        }
+
+        long waitNanos = slot - now;
+        record(apiMethod, waitNanos);
+        return waitNanos;
+    }
+
+    /**
+     * Returns the permits reserved by {@link #reserve} for a request that was not sent, for example because it was
+     * cancelled while waiting. The capacity goes to the next requests.
+     *
+     * @param apiKey    the API key of the request, may be null
+     * @param apiMethod the API method of the request
+     */
+    public void release(String apiKey, String apiMethod) {
+        TokenBucket[] buckets = bucketsFor(apiKey, apiMethod);
+        synchronized (this) {
+            for (TokenBucket bucket : buckets) {
+                if (bucket != null)
+                    bucket.giveBack();
+            }
+        }
+    }
+
+    /**
+     * @return the number of permits acquired
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return the number of permits that were not immediately available
+     */
+    public long getDelayedCount() {
+        return delayedCount.get();
+    }
+
+    /**
+     * @return the total time callers waited for permits, in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    /**
+     * @return the longest time a caller waited for a permit, in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    private void record(String apiMethod, long waitNanos) {
+        acquireCount.incrementAndGet();
+        if (waitNanos > 0) {
+            delayedCount.incrementAndGet();
+            totalWaitNanos.addAndGet(waitNanos);
+            long max;
+            while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+                // retry
+            }
+        }
+        GSMetricsListener listener = metricsListener;
+        if (listener != null)
+            listener.onRateLimitWait(apiMethod, waitNanos);
+    }
+
+    private TokenBucket[] bucketsFor(String apiKey, String apiMethod) {
+        String method = normalizeMethod(apiMethod);
+        String namespace = method.substring(0, method.indexOf('.'));
+        return new TokenBucket[]{apiKey != null ? apiKeyLimits.get(apiKey) : null,
+                namespaceLimits.get(namespace), methodLimits.get(method)};
+    }
+
+    // Methods without a namespace belong to "socialize", as in GSRequest.
+    private static String normalizeMethod(String apiMethod) {
+        String method = apiMethod.startsWith("/") ? apiMethod.substring(1) : apiMethod;
+        method = method.toLowerCase(Locale.ENGLISH);
+        return method.indexOf('.') == -1 ? "socialize." + method : method;
+    }
+
+    /**
+     * A token bucket that hands out reservations: a caller takes the next free slot, possibly in the future,
+     * and sleeps until it comes. Guarded by the limiter, whose lock is held only for the arithmetic, so waiting
+     * callers stay off the monitor.
+     */
+    static class TokenBucket {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private long nextFreeNanos;
+
+        TokenBucket(double permitsPerSecond, int burst) {
+            if (permitsPerSecond <= 0)
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            if (burst < 1)
+                throw new IllegalArgumentException("burst must be positive");
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+            this.burstNanos = intervalNanos * (burst - 1);
+            this.nextFreeNanos = System.nanoTime() - burstNanos;
+        }
+
+        // The first time from now at which a permit is available.
+        long nextFree(long now) {
+            return Math.max(now, nextFreeNanos);
+        }
+
+        // Takes the permit of a request sent at the slot.
+        void take(long slot) {
+            // Unused capacity accumulates up to the burst size.
+            if (nextFreeNanos < slot - burstNanos)
+                nextFreeNanos = slot - burstNanos;
+            nextFreeNanos += intervalNanos;
+        }
+
+        // Gives back the permit of a request that was not sent.
+        void giveBack() {
+            nextFreeNanos -= intervalNanos;
+        }
+    }
+}
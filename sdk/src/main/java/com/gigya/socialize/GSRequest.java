@@ -1,16 +1,31 @@
 package com.gigya.socialize;
 
+import javax.net.ssl.SSLContext;
 import java.io.*;
 import java.net.*;
 import java.security.InvalidKeyException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * This class is used for sending a request to Gigya Service.
  */
-public class GSRequest {
+public class GSRequest implements Cloneable {
     public static final String VERSION = "java_3.2.4";
 
     public static boolean ENABLE_CONNECTION_POOLING = true;
@@ -18,6 +33,11 @@ public class GSRequest {
     protected static long timestampOffsetSec = 0; // used internally by the SDK, to compensate for time diff with server
     private static Random randomGenerator = new Random();
     private static final String DEFAULT_API_DOMAIN = "us1.gigya.com";
+    // hosts that rejected a compressed body, with the time (System.nanoTime) until which they are sent uncompressed bodies
+    private static final ConcurrentHashMap<String, Long> gzipUnsupportedHosts = new ConcurrentHashMap<String, Long>();
+    private static final long GZIP_UNSUPPORTED_TTL_NANOS = TimeUnit.HOURS.toNanos(1);
+    // the error of a server that could not read the parameters of a compressed body
+    private static final int GZIP_REJECTED_ERROR = 400001;
 
     protected String host;
     protected String path;
@@ -38,6 +58,31 @@ public class GSRequest {
 
     protected GSLogger logger = new GSLogger();
     private Proxy proxy = null;
+    private GSTransport transport = null;
+    private Executor executor = null;
+    private GSRateLimiter rateLimiter = null;
+    private GSRetryPolicy retryPolicy = null;
+    private GSCircuitBreaker circuitBreaker = null;
+    private GSHedgingPolicy hedgingPolicy = null;
+    private volatile GSTransportRequest activeTransportRequest = null;
+    private volatile boolean attemptCancelled = false;
+    private volatile boolean cancelled = false;
+    private volatile boolean deadlineExceeded = false;
+    private volatile GSRequest hedgeAttempt = null;
+    private int connectTimeoutMS = -1;
+    private int readTimeoutMS = -1;
+    private long totalTimeoutMS = -1;
+    private GSDeadline deadline = null;
+    private GSDeadline sendDeadline = null; // the deadline of the send in progress
+    private boolean streamResponse = false;
+    private boolean retainResponseText = false;
+    private int requestCompressionThreshold = -1;
+    String streamedArrayKey = null; // set by GSCursorIterator, streams the elements of this array to the consumer
+    Consumer<GSObject> streamedArrayConsumer = null;
+    GSHmacSigner signer = null; // set by GSClient, saves decoding the secret and keying a Mac on every signature
+    String[] endpoint = null; // host and path, pre-resolved by GSClient
+
+    private static volatile GSTransport defaultTransport = GSHttpURLConnectionTransport.getInstance();
 
 
     public GSRequest(String accessToken, String apiMethod) {
@@ -148,6 +193,7 @@ public class GSRequest {
 
     public void setMethod(String apiMethod) {
         this.apiMethod = apiMethod;
+        this.endpoint = null;
     }
 
     /**
@@ -255,6 +301,191 @@ public class GSRequest {
         this.proxy = p;
     }
 
+    /**
+     * Sets the transport used to send this request. Overrides the default transport.
+     *
+     * @param transport the transport to use, or null to use the default transport
+     */
+    public void setTransport(GSTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the transport used to send this request
+     */
+    public GSTransport getTransport() {
+        return transport != null ? transport : defaultTransport;
+    }
+
+    /**
+     * Sets the transport used by all requests that were not given a transport of their own.
+     *
+     * @param transport the default transport, or null to restore the HttpURLConnection transport
+     */
+    public static void setDefaultTransport(GSTransport transport) {
+        defaultTransport = transport != null ? transport : GSHttpURLConnectionTransport.getInstance();
+    }
+
+    /**
+     * @return the transport used by requests that were not given a transport of their own
+     */
+    public static GSTransport getDefaultTransport() {
+        return defaultTransport;
+    }
+
+    /**
+     * Sets the executor used to run asynchronous sends.
+     *
+     * @param executor the executor, or null to use {@link GSExecutors#getDefaultExecutor() the default executor}
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @return the executor used to run asynchronous sends
+     */
+    public Executor getExecutor() {
+        return executor != null ? executor : GSExecutors.getDefaultExecutor();
+    }
+
+    /**
+     * Sets a client side rate limiter. The request waits for a permit before it is dispatched.
+     *
+     * @param rateLimiter the rate limiter, or null to send without limiting
+     */
+    public void setRateLimiter(GSRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Sets the policy for retrying failed sends.
+     *
+     * @param retryPolicy the retry policy, or null to retry only on timestamp expiration (403002)
+     */
+    public void setRetryPolicy(GSRetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public GSRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets a circuit breaker. Requests to a host whose circuit is open fail immediately
+     * with {@link GSResponse#ERROR_CIRCUIT_OPEN}.
+     *
+     * @param circuitBreaker the circuit breaker, or null to always send
+     */
+    public void setCircuitBreaker(GSCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Sets a hedging policy. Slow requests to the policy's read methods are raced against a second, identical request.
+     *
+     * @param hedgingPolicy the hedging policy, or null to never hedge
+     */
+    public void setHedgingPolicy(GSHedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * Parses JSON responses directly from the response stream into the response data,
+     * instead of reading the whole body into a string first. This saves several copies of large responses.
+     * Unless {@link #setRetainResponseText(boolean)} is enabled, the raw text is not kept and
+     * {@link GSResponse#getResponseText()} rebuilds it from the data.
+     *
+     * @param streamResponse true to parse responses from the stream
+     */
+    public void setStreamResponse(boolean streamResponse) {
+        this.streamResponse = streamResponse;
+    }
+
+    /**
+     * @param retainResponseText true to keep the raw text of streamed responses, for example for logging
+     */
+    public void setRetainResponseText(boolean retainResponseText) {
+        this.retainResponseText = retainResponseText;
+    }
+
+    /**
+     * Compresses request bodies of at least the given size with gzip, sent with "Content-Encoding: gzip".
+     * When a host rejects a compressed body, with HTTP 415 or with an invalid request format error (400001),
+     * the request is signed again and sent uncompressed, and the host is sent uncompressed bodies for the next hour. The response
+     * to a compressed request is read in full before it is parsed, so it is not streamed.
+     * Compression saves bandwidth on large writes, such as accounts.setAccountInfo or accounts.importFullAccount
+     * with big data or profile objects, at the cost of CPU. See GSRequestCompressionBenchmark in the SDK tests.
+     *
+     * @param thresholdBytes the minimum body size to compress, or -1 to never compress (the default)
+     */
+    public void setRequestCompressionThreshold(int thresholdBytes) {
+        this.requestCompressionThreshold = thresholdBytes;
+    }
+
+    /**
+     * Sets the time allowed to establish the connection, overriding the timeout passed to {@link #send(int)}.
+     *
+     * @param connectTimeoutMS the connect timeout in milliseconds, or -1 for the send timeout
+     */
+    public void setConnectTimeout(int connectTimeoutMS) {
+        this.connectTimeoutMS = connectTimeoutMS;
+    }
+
+    /**
+     * Sets the time allowed between reads of the response, overriding the timeout passed to {@link #send(int)}.
+     * A slow response body that keeps trickling in is bounded only by the total timeout or deadline.
+     *
+     * @param readTimeoutMS the read timeout in milliseconds, or -1 for the send timeout
+     */
+    public void setReadTimeout(int readTimeoutMS) {
+        this.readTimeoutMS = readTimeoutMS;
+    }
+
+    /**
+     * Limits the wall time of each send, including the timestamp retry and any retries of the retry policy.
+     * The clock starts when the request is sent.
+     *
+     * @param totalTimeoutMS the total timeout in milliseconds, or -1 for none
+     */
+    public void setTotalTimeout(long totalTimeoutMS) {
+        this.totalTimeoutMS = totalTimeoutMS;
+    }
+
+    /**
+     * Sets a deadline for the request, typically a {@link GSDeadline#child child} of the deadline of the
+     * work it is part of. If a total timeout is also set, the earlier of the two applies.
+     *
+     * @param deadline the deadline, or null for none
+     */
+    public void setDeadline(GSDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    public GSDeadline getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * Cancels the request. The attempt in progress is aborted, closing its connection, and
+     * the send returns a response with the {@link GSResponse#ERROR_REQUEST_CANCELLED} error code.
+     * A request that is cancelled before it is sent is not sent. Cancellation cannot be undone.
+     */
+    public void cancel() {
+        cancelled = true;
+        cancelAttempt();
+        GSRequest hedge = hedgeAttempt;
+        if (hedge != null)
+            hedge.cancelAttempt();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
     public void setUseHTTPS(boolean useHTTPS) {
         this.useHTTPS = useHTTPS;
     }
@@ -276,6 +507,7 @@ public class GSRequest {
      * @param apiDomain the domain of the data center to be used. For example: "eu1.gigya.com" for Europe data center
      */
     public void setAPIDomain(String apiDomain) {
+        this.endpoint = null;
         if (apiDomain != null)
             this.apiDomain = apiDomain;
         else
@@ -304,21 +536,18 @@ public class GSRequest {
      *                  The timeout is the number of milliseconds till returning
      *                  timeout response. If the timeout expires, the server will
      *                  return a response with a "Request Timeout" error (error code
-     *                  504002).
+     *                  504002). It applies to connecting and to each read, unless
+     *                  set separately with {@link #setConnectTimeout} and {@link #setReadTimeout};
+     *                  use {@link #setTotalTimeout} or {@link #setDeadline} to bound the whole send.
      * @return a GSResponse object representing Gigya's response
      */
     public GSResponse send(int timeoutMS) {
         if (this.apiMethod.startsWith("/"))
             this.apiMethod = this.apiMethod.replaceFirst("/", "");
 
-        if (this.apiMethod.indexOf(".") == -1) {
-            this.host = "socialize." + apiDomain;
-            this.path = "/socialize." + apiMethod;
-        } else {
-            String[] tokens = apiMethod.split("\\.");
-            this.host = tokens[0] + "." + apiDomain;
-            this.path = "/" + apiMethod;
-        }
+        String[] endpoint = this.endpoint != null ? this.endpoint : resolveEndpoint(apiMethod, apiDomain);
+        this.host = endpoint[0];
+        this.path = endpoint[1];
 
         // use "_host" to override domain, if available
         this.host = this.params.getString("_host", this.host);
@@ -339,19 +568,344 @@ public class GSRequest {
             return new GSResponse(this.apiMethod, this.params, 400002, logger);
         }
 
-        try {
-            GSResponse res = sendRequest("POST", this.host, this.path,
-                    params, apiKey, secretKey, this.useHTTPS, this.isLoggedIn,
-                    timeoutMS);
+        GSDeadline deadline = this.deadline;
+        if (totalTimeoutMS >= 0)
+            deadline = GSDeadline.after(totalTimeoutMS).min(deadline);
+        this.sendDeadline = deadline;
+        this.deadlineExceeded = false;
+
+        GSRetryPolicy retryPolicy = this.retryPolicy;
+        GSHedgingPolicy hedgingPolicy = this.hedgingPolicy;
+        boolean hedged = hedgingPolicy != null && hedgingPolicy.isHedged(apiMethod, params);
+        long start = System.nanoTime();
+        int attempt = 1;
+        while (true) {
+            // an attempt cancelled by a deadline or a winning hedge must not cancel the next one
+            attemptCancelled = cancelled;
+            GSResponse res = hedged ? dispatchHedged(timeoutMS, hedgingPolicy) : dispatch(timeoutMS);
+            if (cancelled || deadlineExceeded)
+                return res;
+
             // if error code indicates timestamp expiration, retry the request.
             // (sendRequest calculates the tsOffset)
             if (res.getErrorCode() == 403002 && !isRetry) {
                 isRetry = true;
-                params.remove("sig");
-                return send();
-            } else {
+                resetSignature();
+                continue;
+            }
+            if (retryPolicy == null)
+                return res;
+
+            long elapsedMS = (System.nanoTime() - start) / 1000000;
+            long delayMS = retryPolicy.nextDelayMS(apiMethod, res, attempt, elapsedMS);
+            if (delayMS < 0 || (deadline != null && delayMS >= deadline.remainingMS()))
                 return res;
+
+            logger.write("retry_attempt", attempt + 1);
+            logger.write("retry_delay_ms", delayMS);
+            retryPolicy.onRetry(apiMethod, attempt, res.getErrorCode(), delayMS);
+            try {
+                awaitRetry(delayMS);
+            } catch (InterruptedException exInterrupted) {
+                Thread.currentThread().interrupt();
+                return res;
+            }
+            if (cancelled)
+                return cancelledResponse();
+            attempt++;
+            resetSignature();
+        }
+    }
+
+    // Sleeps before a retry, waking up early if the request is cancelled.
+    private synchronized void awaitRetry(long delayMS) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMS);
+        long remainingNanos;
+        while (!cancelled && (remainingNanos = end - System.nanoTime()) > 0)
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+    }
+
+    private GSResponse cancelledResponse() {
+        return new GSResponse(this.apiMethod, this.params, GSResponse.ERROR_REQUEST_CANCELLED,
+                "Request cancelled", logger);
+    }
+
+    // Removes the signature of a previous attempt, so the request is signed again with a fresh timestamp and nonce.
+    private void resetSignature() {
+        params.remove("sig");
+        urlEncodedParams = null;
+    }
+
+    // Races this request against a copy sent after the policy's delay. The first answer wins and the other is cancelled.
+    private GSResponse dispatchHedged(final int timeoutMS, final GSHedgingPolicy policy) {
+        attemptCancelled = cancelled;
+        final long delayMS = policy.getHedgeDelayMS(apiMethod);
+        final GSRequest primary = this;
+        final CompletableFuture<GSResponse> winner = new CompletableFuture<GSResponse>();
+        final AtomicInteger running = new AtomicInteger(1);
+        // claimed by the hedge when it starts, or by a failed primary so that a hedge still queued never starts
+        final AtomicBoolean hedgeClaimed = new AtomicBoolean();
+        final AtomicBoolean hedgeSent = new AtomicBoolean();
+        final AtomicReference<GSRequest> hedgeRef = new AtomicReference<GSRequest>();
+        // taken before the primary is signed, which adds its timestamp, nonce and signature to the same params
+        final GSObject unsignedParams = params.clone();
+        unsignedParams.remove("sig");
+
+        ScheduledFuture<?> timer = GSExecutors.getScheduler().schedule(new Runnable() {
+            public void run() {
+                if (winner.isDone())
+                    return;
+                try {
+                    getExecutor().execute(new Runnable() {
+                        public void run() {
+                            // an executor running rejected tasks on the caller would send the hedge on the scheduler
+                            // thread, and hold every timer of the SDK for the whole request
+                            if (GSExecutors.isSchedulerThread())
+                                return;
+                            running.incrementAndGet();
+                            if (winner.isDone() || !hedgeClaimed.compareAndSet(false, true)) {
+                                running.decrementAndGet();
+                                return;
+                            }
+                            hedgeSent.set(true);
+                            GSRequest hedge = copyRequest(unsignedParams);
+                            hedge.logger.write("hedge", true);
+                            hedgeRef.set(hedge);
+                            hedgeAttempt = hedge;
+                            // the primary cancels the hedge it sees, otherwise the hedge sees the finished race
+                            if (cancelled || winner.isDone())
+                                hedge.cancelAttempt();
+                            GSResponse res = hedge.timedDispatch(timeoutMS, policy, false);
+                            if (finishHedgeRace(winner, running, res))
+                                primary.cancelAttempt();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    // the race is left to the primary
+                }
+            }
+        }, delayMS, TimeUnit.MILLISECONDS);
+
+        GSResponse res = timedDispatch(timeoutMS, policy, true);
+        timer.cancel(false);
+        if (!isServerAnswer(res) && hedgeClaimed.compareAndSet(false, true)) {
+            // The hedge has not started, and now never will. Waiting for it could wait for a thread of the executor
+            // held by this very request, or by other primaries waiting for their own hedges.
+            winner.complete(res);
+        } else if (finishHedgeRace(winner, running, res)) {
+            GSRequest hedge = hedgeRef.get();
+            if (hedge != null)
+                hedge.cancelAttempt();
+        }
+
+        GSResponse result = awaitHedgeRace(winner, res, hedgeWaitMS(timeoutMS));
+        hedgeAttempt = null;
+        GSRequest hedge = hedgeRef.get();
+        if (hedge != null && hedge.deadlineExceeded)
+            deadlineExceeded = true;
+        if (hedgeSent.get()) {
+            logger.write("hedge_delay_ms", delayMS);
+            policy.onHedge(apiMethod, delayMS, result != res);
+        }
+        return result;
+    }
+
+    // Waits for the hedge still running after the primary failed, at most waitMS (-1 for no limit).
+    private GSResponse awaitHedgeRace(CompletableFuture<GSResponse> winner, GSResponse primaryRes, long waitMS) {
+        try {
+            return waitMS < 0 ? winner.get() : winner.get(waitMS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exInterrupted) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            // the hedge did not answer in time
+        }
+        GSRequest hedge = hedgeAttempt;
+        if (hedge != null)
+            hedge.cancelAttempt();
+        winner.complete(primaryRes);
+        return winner.join();
+    }
+
+    // The time left before the deadline, or the longest the hedge's timeouts let it take; -1 without either.
+    private long hedgeWaitMS(int timeoutMS) {
+        GSDeadline deadline = this.sendDeadline;
+        if (deadline != null)
+            return Math.max(0, deadline.remainingMS());
+        int connect = this.connectTimeoutMS != -1 ? this.connectTimeoutMS : timeoutMS;
+        int read = this.readTimeoutMS != -1 ? this.readTimeoutMS : timeoutMS;
+        if (connect <= 0 || read <= 0)
+            return -1;
+        return (long) connect + read;
+    }
+
+    private GSResponse timedDispatch(int timeoutMS, GSHedgingPolicy policy, boolean primary) {
+        long start = System.nanoTime();
+        GSResponse res = dispatch(timeoutMS);
+        if (isServerAnswer(res)) {
+            policy.recordLatency(apiMethod, System.nanoTime() - start);
+        } else if (primary && res.getErrorCode() == GSResponse.ERROR_REQUEST_CANCELLED && !cancelled && !deadlineExceeded) {
+            // A primary that lost the race was slower than the hedge: its elapsed time is a lower bound of its latency.
+            // Dropping it would hide the slow tail the delay is computed from. A losing hedge started late, and its
+            // time adds nothing to the primary latency that was recorded.
+            policy.recordLatency(apiMethod, System.nanoTime() - start);
+        }
+        return res;
+    }
+
+    // Completes the race with an answer from the server, or with a failure once no other attempt is running.
+    private static boolean finishHedgeRace(CompletableFuture<GSResponse> winner, AtomicInteger running, GSResponse res) {
+        if (isServerAnswer(res))
+            return winner.complete(res);
+        if (running.decrementAndGet() == 0)
+            winner.complete(res);
+        return false;
+    }
+
+    private static boolean isServerAnswer(GSResponse res) {
+        int errorCode = res.getErrorCode();
+        return errorCode != 500000 && errorCode != 504002
+                && errorCode != GSResponse.ERROR_REQUEST_CANCELLED && errorCode != GSResponse.ERROR_CIRCUIT_OPEN;
+    }
+
+    /**
+     * Creates an independent copy of this request, for example for a hedged attempt or the next page of a cursor.
+     * The copy has its own parameters and trace, so it is signed with its own timestamp and nonce.
+     * It is sent once: retry and hedging policies are not copied.
+     */
+    GSRequest copyRequest() {
+        GSObject copyParams = params.clone();
+        copyParams.remove("sig");
+        return copyRequest(copyParams);
+    }
+
+    // The copy takes the given parameters, which must not be shared with another request.
+    private GSRequest copyRequest(GSObject params) {
+        GSRequest copy;
+        try {
+            copy = (GSRequest) super.clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        copy.params = params;
+        copy.urlEncodedParams = null;
+        if (additionalHeaders != null)
+            copy.additionalHeaders = new HashMap<String, String>(additionalHeaders);
+        copy.logger = new GSLogger(logger.isEnabled());
+        copy.activeTransportRequest = null;
+        copy.attemptCancelled = false;
+        copy.cancelled = false;
+        copy.deadlineExceeded = false;
+        copy.hedgeAttempt = null;
+        copy.retryPolicy = null;
+        copy.hedgingPolicy = null;
+        return copy;
+    }
+
+    // Aborts the attempt in progress, or the next one if none has started yet.
+    void cancelAttempt() {
+        attemptCancelled = true;
+        GSTransportRequest transportRequest = activeTransportRequest;
+        if (transportRequest != null)
+            transportRequest.cancel();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    // Sleeps before an attempt is sent, waking up early if the attempt is cancelled.
+    private synchronized void awaitAttempt(long waitNanos) throws InterruptedException {
+        long end = System.nanoTime() + waitNanos;
+        long remainingNanos;
+        while (!attemptCancelled && (remainingNanos = end - System.nanoTime()) > 0)
+            TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+    }
+
+    private GSResponse dispatch(int timeoutMS) {
+        if (cancelled)
+            return cancelledResponse();
+        final GSDeadline deadline = this.sendDeadline;
+        if (deadline != null && deadline.isExpired())
+            return deadlineExceededResponse();
+
+        GSRateLimiter rateLimiter = this.rateLimiter;
+        if (rateLimiter != null) {
+            // a permit the deadline would expire waiting for is not taken
+            long maxWaitNanos = deadline != null ? TimeUnit.MILLISECONDS.toNanos(deadline.remainingMS()) : Long.MAX_VALUE;
+            long waitNanos = rateLimiter.reserve(apiKey, apiMethod, maxWaitNanos);
+            if (waitNanos < 0)
+                return deadlineExceededResponse();
+            if (waitNanos > 0) {
+                logger.write("rate_limit_wait_ms", waitNanos / 1000000);
+                // a request that is not sent gives its permits back
+                try {
+                    awaitAttempt(waitNanos);
+                } catch (InterruptedException exInterrupted) {
+                    Thread.currentThread().interrupt();
+                    rateLimiter.release(apiKey, apiMethod);
+                    return new GSResponse(this.apiMethod, this.params, 500000,
+                            "Interrupted while waiting for rate limiter", logger);
+                }
+                if (attemptCancelled) {
+                    rateLimiter.release(apiKey, apiMethod);
+                    return cancelledResponse();
+                }
+                if (deadline != null && deadline.isExpired()) {
+                    rateLimiter.release(apiKey, apiMethod);
+                    return deadlineExceededResponse();
+                }
             }
+        }
+
+        // acquired after the rate limiter, so a half-open probe is not held while the request waits for its turn
+        GSCircuitBreaker circuitBreaker = this.circuitBreaker;
+        String circuitHost = this.hostOverride != null ? this.hostOverride : this.host;
+        long circuitPermit = circuitBreaker != null ? circuitBreaker.tryAcquire(circuitHost) : 0;
+        if (circuitPermit == GSCircuitBreaker.REJECTED) {
+            if (rateLimiter != null)
+                rateLimiter.release(apiKey, apiMethod);
+            return new GSResponse(this.apiMethod, this.params, GSResponse.ERROR_CIRCUIT_OPEN,
+                    "Circuit open for " + circuitHost, logger);
+        }
+
+        // Closes the connection when the deadline passes, even while a slow body is still being received
+        ScheduledFuture<?> deadlineTimer = null;
+        if (deadline != null) {
+            deadlineTimer = GSExecutors.getScheduler().schedule(new Runnable() {
+                public void run() {
+                    deadlineExceeded = true;
+                    cancelAttempt();
+                }
+            }, deadline.remainingMS(), TimeUnit.MILLISECONDS);
+        }
+        GSResponse res;
+        try {
+            res = dispatchRequest(timeoutMS);
+        } finally {
+            if (deadlineTimer != null)
+                deadlineTimer.cancel(false);
+        }
+        if (circuitBreaker != null) {
+            // a timeout that is the caller's deadline, and not the host's slowness, is not held against the host
+            if (deadlineExceeded || (res.getErrorCode() == 504002 && deadline != null && deadline.isExpired()))
+                circuitBreaker.release(circuitHost, circuitPermit);
+            else
+                circuitBreaker.onResponse(circuitHost, circuitPermit, res);
+        }
+        return res;
+    }
+
+    private GSResponse deadlineExceededResponse() {
+        deadlineExceeded = true;
+        logger.write("deadline_exceeded", true);
+        return new GSResponse(this.apiMethod, this.params, 504002, "Request Timeout: deadline exceeded", logger);
+    }
+
+    private GSResponse dispatchRequest(int timeoutMS) {
+        activeTransportRequest = null;
+        try {
+            return sendRequest("POST", this.host, this.path,
+                    params, apiKey, secretKey, this.useHTTPS, this.isLoggedIn,
+                    timeoutMS);
         } catch (InvalidKeyException exKey) {
             return new GSResponse(this.apiMethod, this.params, 400006,
                     "Invalid parameter value:" + exKey.getMessage(), logger);
@@ -366,12 +920,110 @@ public class GSRequest {
             return new GSResponse(this.apiMethod, this.params, 504002,
                     "Request Timeout", logger);
         } catch (Exception ex) {
+            if (deadlineExceeded)
+                return deadlineExceededResponse();
+            if (attemptCancelled)
+                return cancelledResponse();
             logger.write(ex);
             return new GSResponse(this.apiMethod, this.params, 500000,
                     ex.toString(), logger);
         }
     }
 
+    private GSTransportResponse sendTransportRequest(String httpMethod, String resourceURI, Map<String, String> headers,
+                                                     byte[] body, int timeoutMS) throws IOException {
+        GSTransportRequest transportRequest = new GSTransportRequest(httpMethod, resourceURI, headers, body);
+        transportRequest.setProxy(proxy);
+        activeTransportRequest = transportRequest;
+        if (attemptCancelled)
+            transportRequest.cancel();
+        int connectTimeoutMS = this.connectTimeoutMS != -1 ? this.connectTimeoutMS : timeoutMS;
+        int readTimeoutMS = this.readTimeoutMS != -1 ? this.readTimeoutMS : timeoutMS;
+        GSDeadline deadline = this.sendDeadline;
+        if (deadline != null) {
+            // a socket timeout of 0 means infinite, so never pass less than 1ms
+            int remainingMS = (int) Math.max(1, Math.min(Integer.MAX_VALUE, deadline.remainingMS()));
+            if (connectTimeoutMS == -1 || connectTimeoutMS > remainingMS)
+                connectTimeoutMS = remainingMS;
+            if (readTimeoutMS == -1 || readTimeoutMS > remainingMS)
+                readTimeoutMS = remainingMS;
+        }
+        transportRequest.setConnectTimeoutMS(connectTimeoutMS);
+        transportRequest.setReadTimeoutMS(readTimeoutMS);
+        // Allow subclasses to configure the connection (e.g., add client certificates)
+        transportRequest.setSSLContext(getSSLContext());
+        transportRequest.setConnectionConfigurator(new GSConnectionConfigurator() {
+            public void configure(URLConnection conn) {
+                configureConnection(conn);
+            }
+        });
+        return getTransport().send(transportRequest);
+    }
+
+    private static boolean isGzipUnsupported(String domain) {
+        Long until = gzipUnsupportedHosts.get(domain);
+        if (until == null)
+            return false;
+        if (until - System.nanoTime() > 0)
+            return true;
+        gzipUnsupportedHosts.remove(domain, until);
+        return false;
+    }
+
+    // Requests are sent with httpStatusCodes=false, so besides HTTP 415 a rejection can come as an error code in the body.
+    private static boolean isGzipRejected(GSTransportResponse response) throws IOException {
+        if (response.getStatusCode() == 415)
+            return true;
+        InputStream input = response.getBody();
+        if (input == null)
+            return false;
+        if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding")))
+            input = new GZIPInputStream(input);
+        String text = new String(readFully(input), "UTF-8");
+        response.getBody().reset();
+        // only the top-level error code counts, not one nested in the returned data
+        if (!text.contains(String.valueOf(GZIP_REJECTED_ERROR)))
+            return false;
+        try {
+            return new GSObject(text).getInt("errorCode", 0) == GZIP_REJECTED_ERROR;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Reads the body into memory, so it can be inspected before it is parsed.
+    private static GSTransportResponse bufferResponse(GSTransportResponse response) throws IOException {
+        InputStream input = response.getBody();
+        if (input == null)
+            return response;
+        byte[] body;
+        try {
+            body = readFully(input);
+        } finally {
+            response.close();
+        }
+        return new GSTransportResponse(response.getStatusCode(), response.getHeaders(), new ByteArrayInputStream(body));
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = input.read(buffer)) != -1; )
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        GZIPOutputStream out = new GZIPOutputStream(bytes, 8192);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        return bytes.toByteArray();
+    }
+
     /**
      * Override for a different authorization clause.
      *
@@ -391,24 +1043,77 @@ public class GSRequest {
     }
 
     /**
-     * Sends the request asynchronously.
+     * Sends the request asynchronously, on the request's executor (see {@link GSExecutors}).
+     * Exceptions thrown by the listener are written to the request's logger.
      *
      * @param listener an Object which implements the GSResponseListener
      * @param context  this object will be passed untouched and received back in the
      *                 response
      */
     public void send(final GSResponseListener listener, final Object context) {
-        Runnable r = new Runnable() {
-            public void run() {
-                GSResponse res = send();
+        sendAsync().whenComplete(new BiConsumer<GSResponse, Throwable>() {
+            public void accept(GSResponse res, Throwable error) {
+                if (error != null) {
+                    logger.write("Asynchronous request failed");
+                    logger.write(error);
+                    return;
+                }
                 if (listener != null) {
-                    listener.onGSResponse(apiMethod, res, context);
+                    try {
+                        listener.onGSResponse(apiMethod, res, context);
+                    } catch (RuntimeException ex) {
+                        logger.write("GSResponseListener failed");
+                        logger.write(ex);
+                    }
                 }
             }
-        };
-        Thread t = new Thread(r);
-        t.start();
+        });
+    }
 
+    /**
+     * Sends the request asynchronously on the request's executor.
+     *
+     * @return a future completed with Gigya's response
+     */
+    public CompletableFuture<GSResponse> sendAsync() {
+        return sendAsync(-1);
+    }
+
+    /**
+     * Sends the request asynchronously on the request's executor.
+     * The returned future always completes normally with a GSResponse. If the executor rejects the request,
+     * the response carries the {@link GSResponse#ERROR_REQUEST_REJECTED} error code and the request is not sent.
+     *
+     * Cancelling the returned future {@link #cancel() cancels} the request, freeing its connection and thread.
+     *
+     * @param timeoutMS the request timeout in milliseconds, see {@link #send(int)}
+     * @return a future completed with Gigya's response
+     */
+    public CompletableFuture<GSResponse> sendAsync(final int timeoutMS) {
+        final CompletableFuture<GSResponse> future = new CompletableFuture<GSResponse>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean result = super.cancel(mayInterruptIfRunning);
+                GSRequest.this.cancel();
+                return result;
+            }
+        };
+        try {
+            getExecutor().execute(new Runnable() {
+                public void run() {
+                    try {
+                        future.complete(send(timeoutMS));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            logger.write(ex);
+            future.complete(new GSResponse(this.apiMethod, this.params, GSResponse.ERROR_REQUEST_REJECTED,
+                    "Request rejected: too many pending requests", logger));
+        }
+        return future;
     }
 
     /**
@@ -434,6 +1139,27 @@ public class GSRequest {
     }
 
     /////////////////////////////////////// PRIVATE & PROTECTED ////////////////////////////////////////////
+
+    /**
+     * Resolves the host and path of an API method.
+     * Methods without a namespace are sent to the "socialize" namespace.
+     *
+     * @param apiMethod the API method, for example "accounts.getAccountInfo"
+     * @param apiDomain the data center domain, for example "us1.gigya.com"
+     * @return an array holding the host and the path
+     */
+    static String[] resolveEndpoint(String apiMethod, String apiDomain) {
+        if (apiMethod.startsWith("/"))
+            apiMethod = apiMethod.replaceFirst("/", "");
+
+        if (apiMethod.indexOf(".") == -1) {
+            return new String[]{"socialize." + apiDomain, "/socialize." + apiMethod};
+        } else {
+            String[] tokens = apiMethod.split("\\.");
+            return new String[]{tokens[0] + "." + apiDomain, "/" + apiMethod};
+        }
+    }
+
     private String buildQS() {
         StringBuilder req = new StringBuilder();
         String val;
@@ -478,8 +1204,9 @@ public class GSRequest {
                         httpMethod, resourceURI, this);
                 logger.write("baseString", baseString);
 
-                String signature = SigUtils.getOAuth1Signature(
-                        baseString, secret);
+                String signature = signer != null
+                        ? signer.getOAuth1Signature(baseString)
+                        : SigUtils.getOAuth1Signature(baseString, secret);
 
                 params.put("sig", signature);
                 logger.write("sig", signature);
@@ -515,10 +1242,9 @@ public class GSRequest {
                                      int timeoutMS)
             throws Exception {
         long start = new Date().getTime();
-        OutputStreamWriter wr = null;
         BufferedReader rd = null;
         StringBuilder res = new StringBuilder();
-        URLConnection conn = null;
+        GSTransportResponse response = null;
         try {
 
             if (this.hostOverride != null)
@@ -539,69 +1265,59 @@ public class GSRequest {
 
             String data = this.buildQS();
             logger.write("post_data", data);
-
-            URL url = new URL(resourceURI);
-            logger.write("url", url);
-
-            if (proxy == null)
-                conn = url.openConnection();
-            else
-                conn = url.openConnection(proxy);
-
-            // Allow subclasses to configure the connection (e.g., add client certificates)
-            configureConnection(conn);
-
-            if (timeoutMS != -1) {
-                conn.setConnectTimeout(timeoutMS);
-                conn.setReadTimeout(timeoutMS);
-            }
+            logger.write("url", resourceURI);
 
             // Add additional custom headers.
-            if (additionalHeaders != null) {
-                for (Map.Entry<String, String> entry : additionalHeaders.entrySet()) {
-                    conn.setRequestProperty(entry.getKey(), entry.getValue());
-                }
-            }
+            Map<String, String> headers = new LinkedHashMap<String, String>();
+            if (additionalHeaders != null)
+                headers.putAll(additionalHeaders);
 
-            conn.setRequestProperty("Accept-Encoding", "gzip");
+            headers.put("Content-Type", "application/x-www-form-urlencoded");
+            headers.put("Accept-Encoding", "gzip");
 
             if (GSRequest.ENABLE_CONNECTION_POOLING) {
-                conn.setRequestProperty("X-Connection", "Keep-Alive");
+                headers.put("X-Connection", "Keep-Alive");
             } else {
-                conn.setRequestProperty("connection", "close");
+                headers.put("connection", "close");
             }
 
-            conn.setDoOutput(true);
-            ((HttpURLConnection) conn).setRequestMethod(httpMethod);
-
-            wr = new OutputStreamWriter(conn.getOutputStream());
-            wr.write(data);
-            wr.flush();
-
-            int responseStatusCode = ((HttpURLConnection) conn).getResponseCode();
-            boolean badRequest = (responseStatusCode >= HttpURLConnection.HTTP_BAD_REQUEST);
-            InputStream input;
-
-            if (badRequest)
-                input = ((HttpURLConnection) conn).getErrorStream();
-            else
-                input = conn.getInputStream();
-
-            if ("gzip".equals(conn.getContentEncoding())) {
-                input = new GZIPInputStream(input);
+            byte[] body = data.getBytes("UTF-8");
+            boolean compress = requestCompressionThreshold >= 0 && body.length >= requestCompressionThreshold
+                    && !isGzipUnsupported(domain);
+            if (compress) {
+                Map<String, String> compressedHeaders = new LinkedHashMap<String, String>(headers);
+                compressedHeaders.put("Content-Encoding", "gzip");
+                byte[] compressed = gzip(body);
+                logger.write("request_compressed_bytes", body.length + " -> " + compressed.length);
+                response = sendTransportRequest(httpMethod, resourceURI, compressedHeaders, compressed, timeoutMS);
+                response = bufferResponse(response);
+                if (isGzipRejected(response)) {
+                    // the endpoint does not accept compressed bodies; remember it and send uncompressed
+                    logger.write("request_compression_rejected", domain);
+                    gzipUnsupportedHosts.put(domain, System.nanoTime() + GZIP_UNSUPPORTED_TTL_NANOS);
+                    response.close();
+                    response = null;
+                    // the server saw the first signature; the resend gets its own timestamp and nonce
+                    resetSignature();
+                    signRequest(token, secret, httpMethod, resourceURI);
+                    data = this.buildQS();
+                    logger.write("post_data", data);
+                    body = data.getBytes("UTF-8");
+                }
             }
-            rd = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+            if (response == null)
+                response = sendTransportRequest(httpMethod, resourceURI, headers, body, timeoutMS);
 
-            String line;
-            while ((line = rd.readLine()) != null) {
-                res.append(line);
+            InputStream input = response.getBody();
+            if (input == null)
+                input = new ByteArrayInputStream(new byte[0]);
+            if ("gzip".equalsIgnoreCase(response.getHeader("Content-Encoding"))) {
+                input = new GZIPInputStream(input);
             }
-
-            logger.write("server", conn.getHeaderField("x-server"));
-            logger.write("raw_response", res.toString());
+            logger.write("server", response.getHeader("x-server"));
 
             // calc timestamp offset
-            String dateHeader = conn.getHeaderField("Date");
+            String dateHeader = response.getHeader("Date");
             if (dateHeader != null) {
                 try {
                     SimpleDateFormat format = new SimpleDateFormat(
@@ -612,35 +1328,49 @@ public class GSRequest {
                 } catch (Exception ex) {
                 }
             }
-            long end = new Date().getTime();
-            logger.write("request_duration", end - start);
 
-            GSResponse gsr = new GSResponse(this.apiMethod, res.toString(), logger);
-            gsr.headers = conn.getHeaderFields();
+            GSResponse gsr;
+            if (streamedArrayConsumer != null) {
+                logger.write("request_duration", new Date().getTime() - start);
+                gsr = new GSResponse(this.apiMethod, new InputStreamReader(input, "UTF-8"), streamedArrayKey, streamedArrayConsumer, logger);
+            } else if (streamResponse) {
+                // the body is read while parsing, so the duration logged is the time to the response headers
+                logger.write("request_duration", new Date().getTime() - start);
+                gsr = new GSResponse(this.apiMethod, new InputStreamReader(input, "UTF-8"), retainResponseText, logger);
+            } else {
+                rd = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+
+                String line;
+                while ((line = rd.readLine()) != null) {
+                    res.append(line);
+                }
+                logger.write("raw_response", res.toString());
+
+                long end = new Date().getTime();
+                logger.write("request_duration", end - start);
 
-            wr.close();
-            rd.close();
-            input.close();
+                gsr = new GSResponse(this.apiMethod, res.toString(), logger);
+            }
+            gsr.headers = response.getHeaders();
+            gsr.httpStatusCode = response.getStatusCode();
 
             return gsr;
         } catch (Exception ex) {
             logger.write(ex);
             throw ex;
         } finally {
-            if (wr != null)
+            if (rd != null)
                 try {
-                    wr.close();
+                    rd.close();
                 } catch (IOException e) {
                     logger.write(e);
                 }
-            if (rd != null)
+            if (response != null)
                 try {
-                    rd.close();
+                    response.close();
                 } catch (IOException e) {
                     logger.write(e);
                 }
-            if (conn != null && !GSRequest.ENABLE_CONNECTION_POOLING)
-                ((HttpURLConnection) conn).disconnect();
         }
     }
 
@@ -682,6 +1412,7 @@ public class GSRequest {
     /**
      * Hook method that subclasses can override to configure the URLConnection
      * before the request is sent. For example, to apply client certificates for mTLS.
+     * Invoked by URLConnection based transports, such as the default {@link GSHttpURLConnectionTransport}.
      *
      * @param conn The URLConnection that will be used for the request
      */
@@ -690,4 +1421,16 @@ public class GSRequest {
         // Subclasses can override to add custom configuration
     }
 
+    /**
+     * Hook method that subclasses can override to provide the SSL context of the connection,
+     * for example one presenting a client certificate for mTLS.
+     * Used by transports that do not invoke {@link #configureConnection}, such as the HTTP/2 transport.
+     * Return the same instance for every request, so that connections and TLS sessions can be reused.
+     *
+     * @return the SSL context, or null for the transport default
+     */
+    protected SSLContext getSSLContext() {
+        return null;
+    }
+
 }
@@ -1,13 +1,37 @@
 package com.gigya.socialize;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.function.Consumer;
 
 /**
  * Wraps Gigya server's response.
  */
 public class GSResponse {
+
+    /**
+     * SDK generated error: the request was rejected by a saturated executor and was not sent.
+     */
+    public static final int ERROR_REQUEST_REJECTED = 500027;
+
+    /**
+     * SDK generated error: the circuit of the target host is open and the request was not sent.
+     */
+    public static final int ERROR_CIRCUIT_OPEN = 500028;
+
+    /**
+     * SDK generated error: the request was cancelled before a response was received.
+     */
+    public static final int ERROR_REQUEST_CANCELLED = 500029;
+
     private int errorCode = 0;
     private String errorMessage = null;
     private String errorDetails = null;
@@ -15,7 +39,8 @@ public class GSResponse {
 
     private GSObject data = null;
     protected Map<String, List<String>> headers = null;
-    private GSLogger logger = new GSLogger();
+    protected int httpStatusCode = 0;
+    private GSLogger logger;
     private static TreeMap<Integer, String> errorMsgDic = new TreeMap<Integer, String>();
     private static final String LOG_HEADER = "*********** GSResponse Log ***********\n";
 
@@ -23,6 +48,9 @@ public class GSResponse {
         errorMsgDic.put(500026, "No Internet Connection");
         errorMsgDic.put(400002, "Required parameter is missing");
         errorMsgDic.put(403000, "Invalid or missing session");
+        errorMsgDic.put(ERROR_REQUEST_REJECTED, "Request rejected");
+        errorMsgDic.put(ERROR_CIRCUIT_OPEN, "Circuit open");
+        errorMsgDic.put(ERROR_REQUEST_CANCELLED, "Request cancelled");
     }
 
     // for constructing response when there is not request (error before request creation)
@@ -35,6 +63,7 @@ public class GSResponse {
     }
 
     public GSResponse(String method, GSObject params, int errorCode, String errorMessage, String errorDetails, GSLogger traceSoFar) {
+        logger = newLogger(traceSoFar);
         logger.write(traceSoFar);
         if (errorMessage == null || errorMessage.length() == 0)
             errorMessage = getErrorMessage(errorCode);
@@ -52,6 +81,7 @@ public class GSResponse {
     }
 
     protected GSResponse(String method, String responseText, GSLogger traceSoFar) {
+        logger = newLogger(traceSoFar);
         logger.write(traceSoFar);
         this.responseText = responseText.trim();
 
@@ -82,6 +112,134 @@ public class GSResponse {
         logger.write("errorDetails", this.errorDetails);
     }
 
+    /**
+     * Parses a JSON response directly from the response body, without building intermediate strings.
+     * Other formats, such as XML, are read into a string and parsed as usual.
+     *
+     * @param method      the API method
+     * @param body        the decoded response body
+     * @param retainText  true to also keep the raw text, as returned by {@link #getResponseText()}
+     * @param traceSoFar  the request trace
+     * @throws IOException if reading the body failed
+     */
+    protected GSResponse(String method, Reader body, boolean retainText, GSLogger traceSoFar) throws IOException {
+        logger = newLogger(traceSoFar);
+        logger.write(traceSoFar);
+
+        BodyReader reader = new BodyReader(body, retainText);
+        int first;
+        do {
+            first = reader.read();
+        } while (first != -1 && Character.isWhitespace(first));
+
+        if (first != '{') {
+            StringBuilder text = new StringBuilder();
+            if (first != -1)
+                text.append((char) first);
+            char[] buffer = new char[8192];
+            for (int n; (n = reader.read(buffer)) != -1; )
+                text.append(buffer, 0, n);
+            GSResponse parsed = new GSResponse(method, text.toString(), null);
+            this.responseText = parsed.responseText;
+            this.errorCode = parsed.errorCode;
+            this.errorMessage = parsed.errorMessage;
+        } else {
+            try {
+                this.data = new GSObject(new PrefixedReader('{', reader));
+                this.errorCode = data.getInt("errorCode", 0);
+                this.errorMessage = data.getString("errorMessage", null);
+                this.errorDetails = data.getString("errorDetails", null);
+            } catch (Exception ex) {
+                if (reader.error != null)
+                    throw reader.error;
+                this.errorCode = 500;
+                this.errorMessage = ex.getMessage();
+            }
+            this.responseText = retainText ? reader.text.toString().trim() : null;
+        }
+        if (retainText)
+            logger.write("raw_response", getResponseText());
+        logger.write("errorCode", this.errorCode);
+        logger.write("errorMessage", this.errorMessage);
+        logger.write("errorDetails", this.errorDetails);
+    }
+
+    /**
+     * Parses a JSON response from the response body, passing the elements of one top level array to a consumer as
+     * they are read instead of adding them to the response data. Used to iterate large result pages record by record.
+     *
+     * @param method      the API method
+     * @param body        the decoded response body
+     * @param arrayKey    the key of the streamed array, for example "results"
+     * @param consumer    receives each object element of the array
+     * @param traceSoFar  the request trace
+     * @throws IOException if reading the body failed
+     */
+    GSResponse(String method, Reader body, String arrayKey, Consumer<GSObject> consumer, GSLogger traceSoFar) throws IOException {
+        logger = newLogger(traceSoFar);
+        logger.write(traceSoFar);
+
+        BodyReader reader = new BodyReader(body, false);
+        try {
+            JSONTokener tokener = new JSONTokener(reader);
+            if (tokener.nextClean() != '{')
+                throw tokener.syntaxError("A JSON object text must begin with '{'");
+
+            JSONObject rest = new JSONObject();
+            char c = tokener.nextClean();
+            while (c != '}') {
+                tokener.back();
+                String key = tokener.nextValue().toString();
+                if (tokener.nextClean() != ':')
+                    throw tokener.syntaxError("Expected a ':' after a key");
+
+                if (key.equals(arrayKey) && tokener.nextClean() == '[') {
+                    c = tokener.nextClean();
+                    while (c != ']') {
+                        tokener.back();
+                        Object element = tokener.nextValue();
+                        if (element instanceof JSONObject)
+                            consumer.accept(new GSObject((JSONObject) element));
+                        c = tokener.nextClean();
+                        if (c == ',')
+                            c = tokener.nextClean();
+                        else if (c != ']')
+                            throw tokener.syntaxError("Expected a ',' or ']'");
+                    }
+                } else {
+                    if (key.equals(arrayKey))
+                        tokener.back();
+                    rest.put(key, tokener.nextValue());
+                }
+
+                c = tokener.nextClean();
+                if (c == ',')
+                    c = tokener.nextClean();
+                else if (c != '}')
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+
+            this.data = new GSObject(rest);
+            this.errorCode = data.getInt("errorCode", 0);
+            this.errorMessage = data.getString("errorMessage", null);
+            this.errorDetails = data.getString("errorDetails", null);
+        } catch (RuntimeException ex) {
+            if (reader.error != null)
+                throw reader.error;
+            if (!(ex instanceof JSONException))
+                throw ex;
+            this.errorCode = 500;
+            this.errorMessage = ex.getMessage();
+        } catch (Exception ex) {
+            this.errorCode = 500;
+            this.errorMessage = ex.getMessage();
+        }
+        this.responseText = null;
+        logger.write("errorCode", this.errorCode);
+        logger.write("errorMessage", this.errorMessage);
+        logger.write("errorDetails", this.errorDetails);
+    }
+
     /**
      * Returns the result code of the operation.
      * Code '0' indicates success, any other number indicates failure. For the complete list of server error codes, see the <a  href="http://developers.gigya.com/display/GD/Response+Codes+and+Errors+REST">Error Codes</a> table.
@@ -114,9 +272,13 @@ public class GSResponse {
      * Returns the raw response data.
      * The raw response data is in JSON format, by default. If the request was sent with the format parameter set to "xml", the raw response data will be in XML format.
      *
+     * When the response was parsed from the stream without retaining its text, the text is rebuilt from the data.
+     *
      * @return the raw response data
      */
     public String getResponseText() {
+        if (this.responseText == null)
+            return data != null ? data.toJsonString() : "";
         return this.responseText;
     }
 
@@ -144,6 +306,13 @@ public class GSResponse {
         return headers;
     }
 
+    /**
+     * @return the HTTP status of the response, or 0 if no HTTP response was received
+     */
+    public int getHttpStatusCode() {
+        return httpStatusCode;
+    }
+
 	/* GETS */
 
     /**
@@ -259,6 +428,10 @@ public class GSResponse {
         return sb.toString();
     }
 
+    private static GSLogger newLogger(GSLogger traceSoFar) {
+        return new GSLogger(traceSoFar == null || traceSoFar.isEnabled());
+    }
+
     private String getStringBetween(String source, String prefix, String suffix) {
         if (source == null || source.length() == 0) return null;
         int prefixStart = source.indexOf(prefix);
@@ -288,5 +461,79 @@ public class GSResponse {
     }
 
 
-}
 
+    // Reads the response body, keeping the first I/O error, which the JSON parser would otherwise wrap,
+    // and optionally a copy of the text.
+    private static class BodyReader extends FilterReader {
+        private final StringBuilder text;
+        private IOException error;
+
+        BodyReader(Reader in, boolean retainText) {
+            super(in);
+            this.text = retainText ? new StringBuilder() : null;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                int c = super.read();
+                if (c != -1 && text != null)
+                    text.append((char) c);
+                return c;
+            } catch (IOException ex) {
+                error = ex;
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            try {
+                int n = super.read(buffer, offset, length);
+                if (n > 0 && text != null)
+                    text.append(buffer, offset, n);
+                return n;
+            } catch (IOException ex) {
+                error = ex;
+                throw ex;
+            }
+        }
+    }
+
+    // Returns a character already consumed from the reader, then the rest of the reader.
+    private static class PrefixedReader extends FilterReader {
+        private int prefix;
+
+        PrefixedReader(char prefix, Reader in) {
+            super(in);
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (prefix != -1) {
+                int c = prefix;
+                prefix = -1;
+                return c;
+            }
+            return super.read();
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            if (length == 0)
+                return 0;
+            if (prefix != -1) {
+                buffer[offset] = (char) prefix;
+                prefix = -1;
+                return 1;
+            }
+            return super.read(buffer, offset, length);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
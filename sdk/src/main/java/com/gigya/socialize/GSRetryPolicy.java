@@ -0,0 +1,181 @@
+package com.gigya.socialize;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether and when a failed request is sent again. <br/>
+ * Retries are delayed with exponential backoff and full jitter: the delay before retry n is a random value between
+ * zero and min(maxDelay, baseDelay * 2^(n-1)), so clients failing together do not retry together.
+ * Retrying stops after the maximum number of attempts or when the next attempt would start after the deadline.
+ * <p>
+ * Every error code has a classification:
+ * <ul>
+ * <li>{@link Classification#RETRIABLE} - the request was not processed by the server, for example a rate limit
+ * rejection. Safe to retry any method.</li>
+ * <li>{@link Classification#RETRIABLE_IF_IDEMPOTENT} - the outcome is unknown, for example a timeout or a dropped
+ * connection. Retried for idempotent (read) methods only, unless {@link #setRetryWrites(boolean)} is enabled.</li>
+ * <li>{@link Classification#NOT_RETRIABLE} - anything else, including all unclassified codes.</li>
+ * </ul>
+ * By default 500000 (connection error), 504002 (request timeout), 500001 (general server error) and HTTP 5xx
+ * responses are retriable if idempotent, and 403048 (rate limit exceeded) is retriable.
+ * Methods are idempotent when their name, after the namespace, starts with "get", "search" or "is",
+ * or when registered with {@link #addIdempotentMethod(String)}.
+ * <p>
+ * The timestamp expiration error (403002) is always retried once, immediately, regardless of the policy.
+ * A policy is thread-safe and may be shared by many requests.
+ */
+public class GSRetryPolicy {
+
+    public enum Classification {
+        NOT_RETRIABLE,
+        RETRIABLE,
+        RETRIABLE_IF_IDEMPOTENT
+    }
+
+    /**
+     * Error code used to classify responses with an HTTP 5xx status and no Gigya error code.
+     */
+    public static final int HTTP_SERVER_ERROR = -500;
+
+    private volatile int maxAttempts = 3;
+    private volatile long baseDelayMS = 100;
+    private volatile long maxDelayMS = 5000;
+    private volatile long deadlineMS = 30000;
+    private volatile boolean retryWrites = false;
+    private volatile GSMetricsListener metricsListener;
+    private final ConcurrentHashMap<Integer, Classification> classifications = new ConcurrentHashMap<Integer, Classification>();
+    private final Set<String> idempotentMethods = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    public GSRetryPolicy() {
+        classify(500000, Classification.RETRIABLE_IF_IDEMPOTENT);
+        classify(500001, Classification.RETRIABLE_IF_IDEMPOTENT);
+        classify(504002, Classification.RETRIABLE_IF_IDEMPOTENT);
+        classify(HTTP_SERVER_ERROR, Classification.RETRIABLE_IF_IDEMPOTENT);
+        classify(403048, Classification.RETRIABLE);
+    }
+
+    /**
+     * @param maxAttempts the maximum number of attempts, including the first one
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1)
+            throw new IllegalArgumentException("maxAttempts must be positive");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param baseDelayMS the backoff of the first retry, doubled for every further retry
+     * @param maxDelayMS  the maximum backoff
+     */
+    public void setBackoff(long baseDelayMS, long maxDelayMS) {
+        if (baseDelayMS < 0 || maxDelayMS < baseDelayMS)
+            throw new IllegalArgumentException("Invalid backoff");
+        this.baseDelayMS = baseDelayMS;
+        this.maxDelayMS = maxDelayMS;
+    }
+
+    /**
+     * @param deadlineMS no retry is started later than this many milliseconds after the first attempt. 0 for no deadline
+     */
+    public void setDeadline(long deadlineMS) {
+        this.deadlineMS = deadlineMS;
+    }
+
+    /**
+     * @param retryWrites true to retry non idempotent methods on {@link Classification#RETRIABLE_IF_IDEMPOTENT} errors.
+     *                    Only enable when writes are safe to repeat, for example when setting absolute values.
+     */
+    public void setRetryWrites(boolean retryWrites) {
+        this.retryWrites = retryWrites;
+    }
+
+    /**
+     * @param metricsListener receives an event for every retry, or null
+     */
+    public void setMetricsListener(GSMetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Sets the classification of an error code.
+     *
+     * @param errorCode      the Gigya error code, or {@link #HTTP_SERVER_ERROR}
+     * @param classification the classification
+     */
+    public void classify(int errorCode, Classification classification) {
+        classifications.put(errorCode, classification);
+    }
+
+    public Classification getClassification(int errorCode) {
+        Classification classification = classifications.get(errorCode);
+        return classification != null ? classification : Classification.NOT_RETRIABLE;
+    }
+
+    /**
+     * Registers a method as safe to repeat.
+     *
+     * @param apiMethod the API method, for example "accounts.exportUsers"
+     */
+    public void addIdempotentMethod(String apiMethod) {
+        idempotentMethods.add(apiMethod.toLowerCase());
+    }
+
+    public boolean isIdempotent(String apiMethod) {
+        String method = apiMethod.toLowerCase();
+        if (idempotentMethods.contains(method))
+            return true;
+        String name = method.substring(method.indexOf('.') + 1);
+        return name.startsWith("get") || name.startsWith("search") || name.startsWith("is");
+    }
+
+    /**
+     * Decides whether a request should be retried.
+     *
+     * @param apiMethod the API method of the request
+     * @param response  the response of the last attempt
+     * @param attempt   the number of attempts made so far
+     * @param elapsedMS the time since the first attempt started
+     * @return the delay in milliseconds before the next attempt, or -1 to stop retrying
+     */
+    public long nextDelayMS(String apiMethod, GSResponse response, int attempt, long elapsedMS) {
+        if (attempt >= maxAttempts || !isRetriable(apiMethod, response))
+            return -1;
+
+        long ceiling = Math.min(maxDelayMS, baseDelayMS << Math.min(attempt - 1, 30));
+        long delay = ceiling > 0 ? (long) (ThreadLocalRandom.current().nextDouble() * ceiling) : 0;
+
+        if (deadlineMS > 0 && elapsedMS + delay >= deadlineMS)
+            return -1;
+        return delay;
+    }
+
+    boolean isRetriable(String apiMethod, GSResponse response) {
+        int errorCode = response.getErrorCode();
+        if (errorCode == 0 && response.getHttpStatusCode() >= 500)
+            errorCode = HTTP_SERVER_ERROR;
+        if (errorCode == 0)
+            return false;
+
+        switch (getClassification(errorCode)) {
+            case RETRIABLE:
+                return true;
+            case RETRIABLE_IF_IDEMPOTENT:
+                return retryWrites || isIdempotent(apiMethod);
+            default:
+                return false;
+        }
+    }
+
+    void onRetry(String apiMethod, int attempt, int errorCode, long delayMS) {
+        GSMetricsListener listener = metricsListener;
+        if (listener != null)
+            listener.onRetry(apiMethod, attempt, errorCode, delayMS);
+    }
+}
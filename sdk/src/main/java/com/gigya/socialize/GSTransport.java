@@ -0,0 +1,23 @@
+package com.gigya.socialize;
+
+import java.io.IOException;
+
+/**
+ * Sends the HTTP exchange of a GSRequest. <br/>
+ * GSRequest builds and signs the request, then hands its URL, headers and body to a transport and parses the
+ * returned status, headers and body stream. The default transport is {@link GSHttpURLConnectionTransport}.
+ * Implementations must be safe for use by multiple threads.
+ */
+public interface GSTransport {
+
+    /**
+     * Sends the request and returns the response once its status line and headers are available.
+     * The caller is responsible for closing the returned response.
+     *
+     * @param request the HTTP request to send
+     * @return the HTTP response
+     * @throws IOException if the request could not be sent or the response could not be read.
+     *                     A {@link java.net.SocketTimeoutException} is reported as a "Request Timeout" (504002) error.
+     */
+    GSTransportResponse send(GSTransportRequest request) throws IOException;
+}
@@ -0,0 +1,149 @@
+package com.gigya.socialize;
+
+import javax.net.ssl.SSLContext;
+import java.net.Proxy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A signed, ready to send HTTP request passed by GSRequest to a {@link GSTransport}.
+ */
+public class GSTransportRequest {
+
+    private final String httpMethod;
+    private final String url;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private int connectTimeoutMS = -1;
+    private int readTimeoutMS = -1;
+    private Proxy proxy;
+    private GSConnectionConfigurator connectionConfigurator;
+    private SSLContext sslContext;
+    private volatile boolean cancelled;
+    private Runnable cancelHandler;
+
+    /**
+     * @param httpMethod "POST" or "GET"
+     * @param url        the full resource URL, including protocol and host
+     * @param headers    request headers
+     * @param body       the request body, or null if there is none
+     */
+    public GSTransportRequest(String httpMethod, String url, Map<String, String> headers, byte[] body) {
+        this.httpMethod = httpMethod;
+        this.url = url;
+        this.headers = headers == null
+                ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers));
+        this.body = body;
+    }
+
+    public String getHttpMethod() {
+        return httpMethod;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return the connect timeout in milliseconds, or -1 for the transport default
+     */
+    public int getConnectTimeoutMS() {
+        return connectTimeoutMS;
+    }
+
+    public void setConnectTimeoutMS(int connectTimeoutMS) {
+        this.connectTimeoutMS = connectTimeoutMS;
+    }
+
+    /**
+     * @return the read timeout in milliseconds, or -1 for the transport default
+     */
+    public int getReadTimeoutMS() {
+        return readTimeoutMS;
+    }
+
+    public void setReadTimeoutMS(int readTimeoutMS) {
+        this.readTimeoutMS = readTimeoutMS;
+    }
+
+    /**
+     * @return the proxy to connect through, or null for a direct connection
+     */
+    public Proxy getProxy() {
+        return proxy;
+    }
+
+    public void setProxy(Proxy proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * @return the callback URLConnection based transports apply to the connection, or null
+     */
+    public GSConnectionConfigurator getConnectionConfigurator() {
+        return connectionConfigurator;
+    }
+
+    public void setConnectionConfigurator(GSConnectionConfigurator connectionConfigurator) {
+        this.connectionConfigurator = connectionConfigurator;
+    }
+
+    /**
+     * @return the SSL context for HTTPS connections, such as an mTLS context with a client certificate, or null for
+     * the transport default. Transports should keep connections of different contexts apart
+     */
+    public SSLContext getSSLContext() {
+        return sslContext;
+    }
+
+    public void setSSLContext(SSLContext sslContext) {
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Registers the action aborting the exchange, for example closing the connection.
+     * Transports should register it before blocking on I/O, then check {@link #isCancelled()}.
+     * If the request was already cancelled, the action runs immediately.
+     *
+     * @param cancelHandler the action, or null
+     */
+    public void setCancelHandler(Runnable cancelHandler) {
+        synchronized (this) {
+            if (!cancelled) {
+                this.cancelHandler = cancelHandler;
+                return;
+            }
+        }
+        if (cancelHandler != null)
+            cancelHandler.run();
+    }
+
+    /**
+     * Aborts the exchange. The thread blocked in {@link GSTransport#send} fails with an IOException.
+     */
+    public void cancel() {
+        Runnable handler;
+        synchronized (this) {
+            if (cancelled)
+                return;
+            cancelled = true;
+            handler = cancelHandler;
+        }
+        if (handler != null)
+            handler.run();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
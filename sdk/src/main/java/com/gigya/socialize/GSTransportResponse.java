@@ -0,0 +1,68 @@
+package com.gigya.socialize;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The HTTP response returned by a {@link GSTransport}. <br/>
+ * The body stream is returned as received, GSRequest takes care of gzip decoding according to the Content-Encoding header.
+ */
+public class GSTransportResponse implements Closeable {
+
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final InputStream body;
+
+    /**
+     * @param statusCode the HTTP status code
+     * @param headers    the response headers
+     * @param body       the response body stream, may be null if the response has no body
+     */
+    public GSTransportResponse(int statusCode, Map<String, List<String>> headers, InputStream body) {
+        this.statusCode = statusCode;
+        this.headers = headers == null ? Collections.<String, List<String>>emptyMap() : headers;
+        this.body = body;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the last value of the named header. Header names are matched ignoring case.
+     *
+     * @param name the header name
+     * @return the header value, or null if the header is not present
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+            if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) {
+                List<String> values = entry.getValue();
+                if (values != null && !values.isEmpty())
+                    return values.get(values.size() - 1);
+            }
+        }
+        return null;
+    }
+
+    public InputStream getBody() {
+        return body;
+    }
+
+    /**
+     * Releases the response body. Subclasses may override to release the underlying connection.
+     */
+    @Override
+    public void close() throws IOException {
+        if (body != null)
+            body.close();
+    }
+}
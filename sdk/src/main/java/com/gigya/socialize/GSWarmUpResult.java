@@ -0,0 +1,101 @@
+package com.gigya.socialize;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of {@link GSClient#warmUp}: how long warming each host took and how many warm-up requests succeeded.
+ */
+public class GSWarmUpResult {
+
+    private final long elapsedMS;
+    private final Map<String, Host> hosts;
+
+    GSWarmUpResult(long elapsedMS, Map<String, Host> hosts) {
+        this.elapsedMS = elapsedMS;
+        this.hosts = Collections.unmodifiableMap(new LinkedHashMap<String, Host>(hosts));
+    }
+
+    /**
+     * @return the wall time of the whole warm-up, in milliseconds
+     */
+    public long getElapsedMS() {
+        return elapsedMS;
+    }
+
+    /**
+     * @return the warm-up of each host, by host name, in the order requested
+     */
+    public Map<String, Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return true if every warm-up request succeeded
+     */
+    public boolean isComplete() {
+        for (Host host : hosts.values()) {
+            if (host.getFailure() != null)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("warm-up ").append(elapsedMS).append("ms");
+        for (Host host : hosts.values())
+            sb.append(", ").append(host);
+        return sb.toString();
+    }
+
+    /**
+     * The warm-up of a single host.
+     */
+    public static class Host {
+        private final String name;
+        private final int requests;
+        private final long elapsedMS;
+        private final Exception failure;
+
+        Host(String name, int requests, long elapsedMS, Exception failure) {
+            this.name = name;
+            this.requests = requests;
+            this.elapsedMS = elapsedMS;
+            this.failure = failure;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of successful warm-up requests. Requests may share a connection, and the transport may
+         * close idle connections, so this is not the number of connections open
+         */
+        public int getRequests() {
+            return requests;
+        }
+
+        /**
+         * @return the time until the responses of all the host's requests arrived (DNS, TCP and TLS handshakes included), in milliseconds
+         */
+        public long getElapsedMS() {
+            return elapsedMS;
+        }
+
+        /**
+         * @return the first error of a warm-up request that failed, or null
+         */
+        public Exception getFailure() {
+            return failure;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": " + requests + " requests in " + elapsedMS + "ms"
+                    + (failure != null ? " (" + failure + ")" : "");
+        }
+    }
+}
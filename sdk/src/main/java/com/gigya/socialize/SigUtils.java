@@ -10,6 +10,8 @@ import java.util.Date;
 
 /**
  * This class is a utility class with static methods for calculating and validating cryptographic signatures.
+ * To sign or validate many signatures with the same secret, use a {@link GSHmacSigner}, which decodes the secret
+ * and keys the HMAC only once.
  */
 public class SigUtils {
 
@@ -0,0 +1,190 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class GSAccountExporterTest extends TestCase {
+
+    private Path dir;
+    private ShardTransport transport;
+    private GSClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("gigya-export");
+        transport = new ShardTransport();
+        client = new GSClient("apiKey", null, "us1.gigya.com", "userKey");
+        client.setTransport(transport);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (File file : dir.toFile().listFiles())
+            file.delete();
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testExportsShardsToNdjsonAndSkipsFinishedShards() throws Exception {
+        GSAccountExporter exporter = newExporter();
+
+        assertEquals(5, exporter.export());
+
+        assertEquals(lines("{\"UID\":\"a1\"}", "{\"UID\":\"a2\"}", "{\"UID\":\"a3\"}"), read("shard-0.ndjson"));
+        assertEquals(lines("{\"UID\":\"b1\"}", "{\"UID\":\"b2\"}"), read("shard-1.ndjson"));
+        assertTrue(read("shard-0.checkpoint").contains("done=true"));
+        assertTrue(transport.queries.get(0).contains("WHERE (lastUpdatedTimestamp >= "));
+        assertTrue(transport.queries.get(0).contains(" AND (isActive = true) LIMIT 2"));
+
+        int requests = transport.queries.size();
+        assertEquals(0, exporter.export());
+        assertEquals(requests, transport.queries.size());
+    }
+
+    @Test
+    public void testResumesFromCheckpoint() throws Exception {
+        String firstPage = "{\"UID\":\"a1\"}\n{\"UID\":\"a2\"}\n";
+        Files.write(dir.resolve("shard-0.ndjson"), (firstPage + "{\"UID\":\"a3").getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("shard-0.checkpoint"), ("offset=" + firstPage.length() + "\nrecords=2\ncursorId=a-page2\ndone=false\n").getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("shard-1.checkpoint"), "offset=0\nrecords=0\ndone=true\n".getBytes(StandardCharsets.UTF_8));
+        GSAccountExporter exporter = newExporter();
+
+        assertEquals(1, exporter.export());
+
+        assertEquals(lines("{\"UID\":\"a1\"}", "{\"UID\":\"a2\"}", "{\"UID\":\"a3\"}"), read("shard-0.ndjson"));
+        assertEquals(1, transport.queries.size());
+        assertEquals("cursorId=a-page2", transport.queries.get(0));
+    }
+
+    @Test
+    public void testRestartsShardWhenCheckpointedCursorExpired() throws Exception {
+        Files.write(dir.resolve("shard-0.ndjson"), "{\"UID\":\"a1\"}\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("shard-0.checkpoint"), "offset=13\nrecords=1\ncursorId=expired\ndone=false\n".getBytes(StandardCharsets.UTF_8));
+        GSAccountExporter exporter = newExporter();
+
+        assertEquals(5, exporter.export());
+
+        assertEquals(lines("{\"UID\":\"a1\"}", "{\"UID\":\"a2\"}", "{\"UID\":\"a3\"}"), read("shard-0.ndjson"));
+    }
+
+    @Test
+    public void testKeepsCheckpointOnTransientErrors() throws Exception {
+        String firstPage = "{\"UID\":\"a1\"}\n";
+        Files.write(dir.resolve("shard-0.ndjson"), firstPage.getBytes(StandardCharsets.UTF_8));
+        String checkpoint = "offset=13\nrecords=1\ncursorId=busy\ndone=false\n";
+        Files.write(dir.resolve("shard-0.checkpoint"), checkpoint.getBytes(StandardCharsets.UTF_8));
+        GSAccountExporter exporter = newExporter();
+
+        try {
+            exporter.export();
+            fail("Should fail the shard");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("shard 0"));
+        }
+
+        assertEquals(firstPage, read("shard-0.ndjson"));
+        assertEquals(checkpoint, read("shard-0.checkpoint"));
+    }
+
+    @Test
+    public void testSelectsFromDataStoreType() throws Exception {
+        GSAccountExporter exporter = newExporter();
+        try {
+            exporter.setMethod("ds.search");
+            fail("Should require the data store type");
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+        exporter.setMethod("ds.search", "dsType");
+
+        exporter.export();
+
+        assertTrue(transport.queries.get(0).startsWith("SELECT UID FROM dsType WHERE "));
+    }
+
+    @Test
+    public void testTimeShardsAreExactlyTheRequestedCount() throws Exception {
+        GSAccountExporter exporter = newExporter();
+        exporter.setTimeShards(0, 10, 6);
+
+        exporter.export();
+
+        List<String> windows = new ArrayList<String>();
+        for (String query : transport.queries) {
+            if (query.startsWith("SELECT"))
+                windows.add(query.substring(query.indexOf("lastUpdatedTimestamp")));
+        }
+        Collections.sort(windows);
+        assertEquals(6, windows.size());
+        assertTrue(windows.get(0).startsWith("lastUpdatedTimestamp >= 0 AND lastUpdatedTimestamp < 1)"));
+        assertTrue(windows.get(5).startsWith("lastUpdatedTimestamp >= 8 AND lastUpdatedTimestamp < 10)"));
+    }
+
+    private GSAccountExporter newExporter() {
+        GSAccountExporter exporter = new GSAccountExporter(client, dir);
+        exporter.setFields("UID");
+        exporter.setWhere("isActive = true");
+        exporter.setPageSize(2);
+        exporter.setTimeShards(0, 1000, 2);
+        exporter.setParallelism(2);
+        return exporter;
+    }
+
+    private String read(String file) throws IOException {
+        return new String(Files.readAllBytes(dir.resolve(file)), StandardCharsets.UTF_8);
+    }
+
+    private static String lines(String... records) {
+        StringBuilder sb = new StringBuilder();
+        for (String record : records)
+            sb.append(record).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * Serves two pages for the first shard (a1, a2 then a3) and one page for the second (b1, b2).
+     */
+    static class ShardTransport implements GSTransport {
+        final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+
+        public GSTransportResponse send(GSTransportRequest request) throws IOException {
+            String body = URLDecoder.decode(new String(request.getBody(), "UTF-8"), "UTF-8");
+            String page;
+            if (body.contains("cursorId=a-page2")) {
+                queries.add("cursorId=a-page2");
+                page = "{\"errorCode\":0,\"results\":[{\"UID\":\"a3\"}]}";
+            } else if (body.contains("cursorId=busy")) {
+                queries.add("cursorId=busy");
+                page = "{\"errorCode\":500001,\"errorMessage\":\"General Server Error\"}";
+            } else if (body.contains("cursorId=")) {
+                queries.add("cursorId=expired");
+                page = "{\"errorCode\":400006,\"errorMessage\":\"Invalid parameter value\"}";
+            } else {
+                String query = body.substring(body.indexOf("query=") + 6);
+                query = query.substring(0, query.indexOf("LIMIT") + 7);
+                queries.add(query);
+                page = query.contains(">= 0 ")
+                        ? "{\"errorCode\":0,\"results\":[{\"UID\":\"a1\"},{\"UID\":\"a2\"}],\"nextCursorId\":\"a-page2\"}"
+                        : "{\"errorCode\":0,\"results\":[{\"UID\":\"b1\"},{\"UID\":\"b2\"}]}";
+            }
+            return new GSTransportResponse(200, Collections.<String, List<String>>emptyMap(),
+                    new ByteArrayInputStream(page.getBytes("UTF-8")));
+        }
+    }
+}
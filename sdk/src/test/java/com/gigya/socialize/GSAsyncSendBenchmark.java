@@ -0,0 +1,98 @@
+package com.gigya.socialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the asynchronous execution modes against a transport with simulated network latency.
+ * Not a unit test; run manually:
+ * <pre>
+ * java -cp ... com.gigya.socialize.GSAsyncSendBenchmark [requests] [latencyMS]
+ * </pre>
+ * Modes:
+ * <ul>
+ * <li>thread-per-request - the pre 3.6 send(listener) behavior, a new platform thread per call</li>
+ * <li>bounded-pool - the default executor of sendAsync()</li>
+ * <li>virtual-threads - one virtual thread per call (Java 21+ only)</li>
+ * </ul>
+ */
+public class GSAsyncSendBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        final int latencyMS = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        GSTransport transport = new SleepingTransport(latencyMS);
+
+        System.out.printf("%d requests, %d ms simulated latency, Java %s%n", requests, latencyMS, System.getProperty("java.version"));
+
+        run("thread-per-request", requests, transport, null);
+        run("bounded-pool", requests, transport, GSExecutors.newBoundedExecutor(GSExecutors.DEFAULT_MAX_THREADS, requests, null));
+        if (GSExecutors.isVirtualThreadSupported())
+            run("virtual-threads", requests, transport, GSExecutors.newVirtualThreadExecutor());
+        else
+            System.out.println("virtual-threads: not supported by this JVM");
+    }
+
+    private static void run(String mode, int requests, GSTransport transport, ExecutorService executor) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+
+        final CountDownLatch done = new CountDownLatch(requests);
+        GSResponseListener listener = new GSResponseListener() {
+            public void onGSResponse(String method, GSResponse response, Object context) {
+                done.countDown();
+            }
+        };
+
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+            request.setTransport(transport);
+            if (executor == null) {
+                final GSResponseListener l = listener;
+                new Thread(new Runnable() {
+                    public void run() {
+                        l.onGSResponse(request.getMethod(), request.send(), null);
+                    }
+                }).start();
+            } else {
+                request.setExecutor(executor);
+                request.send(listener, null);
+            }
+        }
+        done.await();
+        long elapsedMS = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("%-20s %7d ms  %9.0f req/s  peak platform threads: %d%n",
+                mode, elapsedMS, requests * 1000.0 / Math.max(1, elapsedMS), threads.getPeakThreadCount());
+
+        if (executor != null)
+            executor.shutdown();
+    }
+
+    static class SleepingTransport implements GSTransport {
+        private final int latencyMS;
+
+        SleepingTransport(int latencyMS) {
+            this.latencyMS = latencyMS;
+        }
+
+        public GSTransportResponse send(GSTransportRequest request) throws IOException {
+            try {
+                Thread.sleep(latencyMS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new GSTransportResponse(200, Collections.<String, List<String>>emptyMap(),
+                    new ByteArrayInputStream("{\"errorCode\":0}".getBytes()));
+        }
+    }
+}
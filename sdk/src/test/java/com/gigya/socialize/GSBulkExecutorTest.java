@@ -0,0 +1,147 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class GSBulkExecutorTest extends TestCase {
+
+    private ThreadPoolExecutor executor;
+    private ConcurrencyTrackingTransport transport;
+    private GSClient client;
+
+    @Before
+    public void setUp() {
+        executor = GSExecutors.newBoundedExecutor(16, 100, null);
+        transport = new ConcurrencyTrackingTransport();
+        client = new GSClient("apiKey", Base64.encodeToString("secret".getBytes(), false));
+        client.setTransport(transport);
+        client.setExecutor(executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOrderedResultsFollowInputOrder() {
+        GSBulkExecutor bulk = new GSBulkExecutor(8);
+        bulk.setOrdered(true);
+
+        Iterator<GSBulkResult> results = bulk.execute(client, "accounts.getAccountInfo", params(100));
+
+        long expected = 0;
+        while (results.hasNext()) {
+            GSBulkResult result = results.next();
+            assertEquals(expected, result.getIndex());
+            assertEquals("u" + expected, result.getRequest().getParams().getString("UID", null));
+            assertEquals(0, result.getResponse().getErrorCode());
+            expected++;
+        }
+        assertEquals(100, expected);
+    }
+
+    @Test
+    public void testCompletionOrderReturnsEveryResultOnce() {
+        GSBulkExecutor bulk = new GSBulkExecutor(8);
+
+        List<Long> indexes = new ArrayList<Long>();
+        Iterator<GSBulkResult> results = bulk.execute(client, "accounts.getAccountInfo", params(100));
+        while (results.hasNext())
+            indexes.add(results.next().getIndex());
+
+        Collections.sort(indexes);
+        assertEquals(100, indexes.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals(Long.valueOf(i), indexes.get(i));
+    }
+
+    @Test
+    public void testInFlightRequestsNeverExceedLimit() {
+        GSBulkExecutor bulk = new GSBulkExecutor(4);
+
+        assertEquals(200, bulk.stream(client, "accounts.getAccountInfo", toList(params(200)).stream()).count());
+        assertTrue(transport.peak.get() <= 4);
+    }
+
+    @Test
+    public void testInputIsConsumedLazily() {
+        final AtomicInteger pulled = new AtomicInteger();
+        final Iterator<GSObject> source = params(1000);
+        Iterator<GSObject> counting = new Iterator<GSObject>() {
+            public boolean hasNext() {
+                return source.hasNext();
+            }
+
+            public GSObject next() {
+                pulled.incrementAndGet();
+                return source.next();
+            }
+        };
+
+        Iterator<GSBulkResult> results = new GSBulkExecutor(5).execute(client, "accounts.getAccountInfo", counting);
+        results.next();
+
+        assertTrue(pulled.get() <= 6);
+    }
+
+    private static Iterator<GSObject> params(final int count) {
+        return new Iterator<GSObject>() {
+            int i = 0;
+
+            public boolean hasNext() {
+                return i < count;
+            }
+
+            public GSObject next() {
+                GSObject params = new GSObject();
+                params.put("UID", "u" + i++);
+                return params;
+            }
+        };
+    }
+
+    private static List<GSObject> toList(Iterator<GSObject> iterator) {
+        List<GSObject> list = new ArrayList<GSObject>();
+        while (iterator.hasNext())
+            list.add(iterator.next());
+        return list;
+    }
+
+    static class ConcurrencyTrackingTransport implements GSTransport {
+        final AtomicInteger current = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        private final Random random = new Random();
+
+        public GSTransportResponse send(GSTransportRequest request) {
+            int now = current.incrementAndGet();
+            while (true) {
+                int max = peak.get();
+                if (now <= max || peak.compareAndSet(max, now))
+                    break;
+            }
+            try {
+                Thread.sleep(random.nextInt(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                current.decrementAndGet();
+            }
+            return new GSTransportResponse(200, null, new ByteArrayInputStream("{\"errorCode\":0}".getBytes()));
+        }
+    }
+}
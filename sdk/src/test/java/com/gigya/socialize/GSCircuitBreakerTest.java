@@ -0,0 +1,158 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class GSCircuitBreakerTest extends TestCase {
+
+    private static final String HOST = "accounts.eu1.gigya.com";
+    private static final String OK = "{\"errorCode\":0,\"statusCode\":200}";
+
+    @Test
+    public void testOpensOnFailureRateAndFailsFast() {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(10, 4);
+        final List<String> changes = new ArrayList<String>();
+        breaker.setMetricsListener(new GSMetricsListener() {
+            public void onCircuitStateChange(String host, GSCircuitBreaker.State from, GSCircuitBreaker.State to) {
+                changes.add(host + ":" + from + "->" + to);
+            }
+        });
+
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport(OK, OK, null, null);
+        for (int i = 0; i < 4; i++)
+            newRequest(transport, breaker).send();
+        assertEquals(GSCircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertEquals(1, changes.size());
+        assertEquals(HOST + ":CLOSED->OPEN", changes.get(0));
+
+        GSResponse res = newRequest(transport, breaker).send();
+        assertEquals(GSResponse.ERROR_CIRCUIT_OPEN, res.getErrorCode());
+        assertEquals(4, transport.bodies.size());
+
+        assertEquals(GSCircuitBreaker.State.CLOSED, breaker.getState("accounts.us1.gigya.com"));
+    }
+
+    @Test
+    public void testErrorsFromHealthyServerDoNotOpen() {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(4, 4);
+        GSResponse invalid = new GSResponse("accounts.getAccountInfo", null, 400006, null);
+        for (int i = 0; i < 10; i++) {
+            long permit = breaker.tryAcquire(HOST);
+            assertTrue(permit != GSCircuitBreaker.REJECTED);
+            breaker.onResponse(HOST, permit, invalid);
+        }
+        assertEquals(GSCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseOrReopen() throws Exception {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(2, 2);
+        breaker.setOpenDuration(20);
+        breaker.setHalfOpenProbes(2);
+        GSResponse timeout = new GSResponse("accounts.search", null, 504002, null);
+        GSResponse ok = new GSResponse("accounts.search", OK, new GSLogger());
+
+        openCircuit(breaker, timeout);
+        Thread.sleep(30);
+        long probe = breaker.tryAcquire(HOST);
+        assertTrue(probe != GSCircuitBreaker.REJECTED);
+        assertEquals(GSCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertEquals(probe, breaker.tryAcquire(HOST));
+        assertEquals(GSCircuitBreaker.REJECTED, breaker.tryAcquire(HOST));
+        breaker.onResponse(HOST, probe, ok);
+        breaker.onResponse(HOST, probe, timeout);
+        assertEquals(GSCircuitBreaker.State.OPEN, breaker.getState(HOST));
+
+        Thread.sleep(30);
+        probe = breaker.tryAcquire(HOST);
+        assertEquals(probe, breaker.tryAcquire(HOST));
+        breaker.onResponse(HOST, probe, ok);
+        breaker.onResponse(HOST, probe, ok);
+        assertEquals(GSCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void testCancelledRequestsReleaseTheirPermit() throws Exception {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(2, 2);
+        breaker.setOpenDuration(20);
+        breaker.setHalfOpenProbes(1);
+        GSResponse cancelled = new GSResponse("accounts.search", null, GSResponse.ERROR_REQUEST_CANCELLED, null);
+
+        openCircuit(breaker, new GSResponse("accounts.search", null, 504002, null));
+        Thread.sleep(30);
+        long probe = breaker.tryAcquire(HOST);
+        assertTrue(probe != GSCircuitBreaker.REJECTED);
+        assertEquals(GSCircuitBreaker.REJECTED, breaker.tryAcquire(HOST));
+        breaker.onResponse(HOST, probe, cancelled);
+
+        assertEquals(GSCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertEquals(probe, breaker.tryAcquire(HOST));
+    }
+
+    @Test
+    public void testOnlyProbesCountWhileHalfOpen() throws Exception {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(2, 2);
+        breaker.setOpenDuration(20);
+        breaker.setHalfOpenProbes(1);
+        GSResponse timeout = new GSResponse("accounts.search", null, 504002, null);
+        GSResponse cancelled = new GSResponse("accounts.search", null, GSResponse.ERROR_REQUEST_CANCELLED, null);
+
+        // a request sent while the circuit was closed ends after it opened
+        long early = breaker.tryAcquire(HOST);
+        openCircuit(breaker, timeout);
+        Thread.sleep(30);
+        long probe = breaker.tryAcquire(HOST);
+        breaker.onResponse(HOST, early, timeout);
+        breaker.onResponse(HOST, early, cancelled);
+        assertEquals(GSCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertEquals(GSCircuitBreaker.REJECTED, breaker.tryAcquire(HOST));
+
+        // a probe of an earlier half open period ends after the circuit was opened and half opened again
+        breaker.onResponse(HOST, probe, timeout);
+        Thread.sleep(30);
+        long next = breaker.tryAcquire(HOST);
+        assertTrue(next != probe);
+        breaker.onResponse(HOST, probe, new GSResponse("accounts.search", OK, new GSLogger()));
+        assertEquals(GSCircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        breaker.onResponse(HOST, next, new GSResponse("accounts.search", OK, new GSLogger()));
+        assertEquals(GSCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void testCallerDeadlineIsNotRecordedAsTimeout() {
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(2, 2);
+
+        for (int i = 0; i < 3; i++) {
+            GSRequest request = newRequest(new GSHedgingPolicyTest.SlowFirstTransport(), breaker);
+            request.setTotalTimeout(50);
+            assertEquals(504002, request.send().getErrorCode());
+        }
+
+        assertEquals(GSCircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    private static void openCircuit(GSCircuitBreaker breaker, GSResponse failure) {
+        for (int i = 0; i < 2; i++)
+            breaker.onResponse(HOST, breaker.tryAcquire(HOST), failure);
+        assertEquals(GSCircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    private static GSRequest newRequest(GSTransport transport, GSCircuitBreaker breaker) {
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.setAPIDomain("eu1.gigya.com");
+        request.setCircuitBreaker(breaker);
+        return request;
+    }
+}
@@ -0,0 +1,167 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class GSClientTest extends TestCase {
+
+    final String SECRET = Base64.encodeToString("client-secret".getBytes(), false);
+
+    @Test
+    public void testNewRequestUsesClientSettings() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":0}".getBytes(), null);
+        GSClient client = new GSClient("apiKey", SECRET, "eu1.gigya.com");
+        client.setTransport(transport);
+
+        GSResponse response = client.newRequest("accounts.getAccountInfo").send();
+
+        assertEquals(0, response.getErrorCode());
+        assertEquals("https://accounts.eu1.gigya.com/accounts.getAccountInfo", transport.request.getUrl());
+        String body = new String(transport.request.getBody());
+        assertTrue(body.contains("apiKey=apiKey"));
+        assertTrue(body.contains("sig="));
+    }
+
+    @Test
+    public void testInvalidSecretIsLoggedOnce() {
+        assertEquals("", new GSClient("apiKey", SECRET).getLog());
+        GSClient client = new GSClient("apiKey", "abc");
+        assertTrue(client.getLog().contains("Invalid secret key"));
+        assertTrue(client.getLog().contains("InvalidKeyException"));
+    }
+
+    @Test
+    public void testNewRequestTakesOwnershipOfParams() {
+        GSClient client = new GSClient("apiKey", SECRET);
+        GSObject params = new GSObject();
+        params.put("UID", "u1");
+
+        GSRequest request = client.newRequest("accounts.getAccountInfo", params);
+
+        assertSame(params, request.getParams());
+    }
+
+    @Test
+    public void testChangingMethodResolvesNewEndpoint() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":0}".getBytes(), null);
+        GSClient client = new GSClient("apiKey", SECRET);
+        client.setTransport(transport);
+
+        GSRequest request = client.newRequest("accounts.getAccountInfo");
+        request.setMethod("ds.get");
+        request.send();
+
+        assertEquals("https://ds.us1.gigya.com/ds.get", transport.request.getUrl());
+    }
+
+    @Test
+    public void testListenerSendRunsOnClientExecutor() throws Exception {
+        final AtomicInteger executed = new AtomicInteger();
+        GSClient client = new GSClient("apiKey", SECRET);
+        client.setTransport(new GSRequestTest.RecordingTransport("{\"errorCode\":0}".getBytes(), null));
+        client.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                executed.incrementAndGet();
+                command.run();
+            }
+        });
+
+        final GSResponse[] received = new GSResponse[1];
+        client.newRequest("accounts.getAccountInfo").send(new GSResponseListener() {
+            public void onGSResponse(String method, GSResponse response, Object context) {
+                received[0] = response;
+            }
+        }, null);
+
+        assertEquals(1, executed.get());
+        assertEquals(0, received[0].getErrorCode());
+    }
+
+    @Test
+    public void testDisabledTraceProducesEmptyLog() {
+        GSClient client = new GSClient("apiKey", SECRET);
+        client.setTransport(new GSRequestTest.RecordingTransport("{\"errorCode\":0}".getBytes(), null));
+        client.setTraceEnabled(false);
+
+        GSResponse response = client.newRequest("accounts.getAccountInfo").send();
+
+        assertEquals(0, response.getErrorCode());
+        assertFalse(response.getLog().contains("apiMethod"));
+    }
+
+    @Test
+    public void testWarmUpPassesSslContext() throws Exception {
+        final SSLContext sslContext = SSLContext.getInstance("TLS");
+        final List<SSLContext> contexts = Collections.synchronizedList(new ArrayList<SSLContext>());
+        GSClient client = new GSClient("apiKey", SECRET, "eu1.gigya.com");
+        client.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest request) {
+                contexts.add(request.getSSLContext());
+                return new GSTransportResponse(404, null, null);
+            }
+        });
+
+        GSWarmUpResult result = client.warmUp(2, null, sslContext, "mtls");
+
+        assertTrue(result.isComplete());
+        assertEquals(2, result.getHosts().get("mtls.eu1.gigya.com").getRequests());
+        assertEquals(Arrays.asList(sslContext, sslContext), contexts);
+    }
+
+    @Test
+    public void testWarmUpSendsRequestsConcurrently() {
+        final AtomicInteger open = new AtomicInteger();
+        final CountDownLatch allSent = new CountDownLatch(6);
+        final List<String> urls = Collections.synchronizedList(new ArrayList<String>());
+        GSClient client = new GSClient("apiKey", SECRET, "eu1.gigya.com");
+        client.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest request) throws IOException {
+                assertEquals("HEAD", request.getHttpMethod());
+                if (request.getUrl().contains("mtls"))
+                    throw new ConnectException("Connection refused");
+                urls.add(request.getUrl());
+                open.incrementAndGet();
+                // answers only once all requests are in flight, so none waits for another
+                allSent.countDown();
+                try {
+                    allSent.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+                return new GSTransportResponse(404, null, null) {
+                    @Override
+                    public void close() {
+                        open.decrementAndGet();
+                    }
+                };
+            }
+        });
+
+        GSWarmUpResult result = client.warmUp(3, "accounts", "socialize", "mtls");
+
+        assertEquals(6, urls.size());
+        assertEquals(0, allSent.getCount());
+        assertEquals(0, open.get());
+        assertTrue(urls.contains("https://accounts.eu1.gigya.com/"));
+        assertEquals(3, result.getHosts().get("socialize.eu1.gigya.com").getRequests());
+        assertEquals(0, result.getHosts().get("mtls.eu1.gigya.com").getRequests());
+        assertTrue(result.getHosts().get("mtls.eu1.gigya.com").getFailure() instanceof ConnectException);
+        assertFalse(result.isComplete());
+    }
+}
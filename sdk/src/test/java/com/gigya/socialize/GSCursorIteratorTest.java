@@ -0,0 +1,187 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+@RunWith(JUnit4.class)
+public class GSCursorIteratorTest extends TestCase {
+
+    @Test
+    public void testIteratesAllPages() throws Exception {
+        PagingTransport transport = new PagingTransport(
+                "{\"nextCursorId\":\"c1\",\"results\":[{\"UID\":\"u1\",\"data\":{\"tags\":[1,2]}},{\"UID\":\"u2\"}],\"errorCode\":0,\"totalCount\":3}",
+                "{\"errorCode\":0,\"results\":[{\"UID\":\"u3\"}],\"totalCount\":3}");
+        GSCursorIterator records = new GSCursorIterator(newRequest(transport));
+
+        List<String> uids = new ArrayList<String>();
+        while (records.hasNext())
+            uids.add(records.next().getString("UID"));
+
+        assertEquals(3, uids.size());
+        assertEquals("u1", uids.get(0));
+        assertEquals("u3", uids.get(2));
+        assertEquals(2, records.getPageCount());
+        assertTrue(transport.bodies.get(0).contains("openCursor=true"));
+        assertTrue(transport.bodies.get(0).contains("query="));
+        assertTrue(transport.bodies.get(1).contains("cursorId=c1"));
+        assertFalse(transport.bodies.get(1).contains("query="));
+    }
+
+    @Test
+    public void testFailedPageThrowsAfterPreviousRecords() {
+        PagingTransport transport = new PagingTransport(
+                "{\"errorCode\":0,\"results\":[{\"UID\":\"u1\"}],\"nextCursorId\":\"c1\"}",
+                "{\"errorCode\":500001,\"errorMessage\":\"General Server Error\"}");
+        GSCursorIterator records = new GSCursorIterator(newRequest(transport));
+
+        assertEquals("u1", records.next().getString("UID", null));
+        try {
+            records.hasNext();
+            fail("Expected a CursorException");
+        } catch (GSCursorIterator.CursorException ex) {
+            assertEquals(500001, ex.getResponse().getErrorCode());
+        }
+    }
+
+    @Test
+    public void testErrorInFetchIsThrownAfterPreviousRecords() {
+        final PagingTransport pages = new PagingTransport(page(2, "c1"));
+        GSCursorIterator records = new GSCursorIterator(newRequest(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest request) throws IOException {
+                if (!pages.bodies.isEmpty())
+                    throw new StackOverflowError();
+                return pages.send(request);
+            }
+        }));
+
+        assertEquals("u0", records.next().getString("UID", null));
+        assertEquals("u1", records.next().getString("UID", null));
+        try {
+            records.hasNext();
+            fail("Expected a CursorException");
+        } catch (GSCursorIterator.CursorException ex) {
+            assertTrue(ex.getMessage().contains("StackOverflowError"));
+        }
+    }
+
+    @Test
+    public void testStreamStopsFetchingWhenClosed() throws Exception {
+        StringBuilder page = new StringBuilder("{\"errorCode\":0,\"nextCursorId\":\"c1\",\"results\":[");
+        for (int i = 0; i < 100; i++)
+            page.append(i == 0 ? "" : ",").append("{\"UID\":\"u").append(i).append("\"}");
+        page.append("]}");
+        PagingTransport transport = new PagingTransport(page.toString());
+        GSCursorIterator records = new GSCursorIterator(newRequest(transport), 2);
+
+        List<String> first = records.stream().limit(5).map(r -> r.getString("UID", null)).collect(Collectors.toList());
+        records.close();
+        Thread.sleep(300);
+
+        assertEquals(5, first.size());
+        assertEquals(1, transport.bodies.size());
+    }
+
+    @Test
+    public void testReadsAtMostBufferSizeAhead() throws Exception {
+        PagingTransport transport = new PagingTransport(page(100, "c1"), page(1, null));
+        GSCursorIterator records = new GSCursorIterator(newRequest(transport), 10);
+
+        records.next();
+        Thread.sleep(200);
+        // the first page is still being read, waiting for the consumer
+        assertEquals(0, records.getPageCount());
+        assertEquals(1, transport.bodies.size());
+
+        int count = 1;
+        while (records.hasNext()) {
+            records.next();
+            count++;
+        }
+        assertEquals(101, count);
+        assertEquals(2, records.getPageCount());
+    }
+
+    @Test
+    public void testStalledConsumerReleasesExecutorThread() throws Exception {
+        ThreadPoolExecutor executor = GSExecutors.newBoundedExecutor(1, 1, null);
+        try {
+            GSRequest request = newRequest(new PagingTransport(page(100, "c1"), page(100, "c2")));
+            request.setExecutor(executor);
+            GSCursorIterator records = new GSCursorIterator(request, 10);
+            records.setStallTimeout(200);
+            records.next();
+
+            // the fetch gives up on the consumer, and the only thread of the executor is free again
+            final CountDownLatch ran = new CountDownLatch(1);
+            executor.execute(new Runnable() {
+                public void run() {
+                    ran.countDown();
+                }
+            });
+            assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+            int count = 1;
+            try {
+                while (records.hasNext()) {
+                    records.next();
+                    count++;
+                }
+                fail("Expected a CursorException");
+            } catch (GSCursorIterator.CursorException ex) {
+                assertNull(ex.getResponse());
+            }
+            assertEquals(11, count);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static GSRequest newRequest(GSTransport transport) {
+        GSObject params = new GSObject();
+        params.put("query", "SELECT UID FROM accounts");
+        GSRequest request = new GSRequest("apiKey", null, "accounts.search", params, true, "userKey");
+        request.setTransport(transport);
+        return request;
+    }
+
+    private static String page(int records, String nextCursorId) {
+        StringBuilder page = new StringBuilder("{\"errorCode\":0,");
+        if (nextCursorId != null)
+            page.append("\"nextCursorId\":\"").append(nextCursorId).append("\",");
+        page.append("\"results\":[");
+        for (int i = 0; i < records; i++)
+            page.append(i == 0 ? "" : ",").append("{\"UID\":\"u").append(i).append("\"}");
+        return page.append("]}").toString();
+    }
+
+    /**
+     * Returns the pages in order, repeating the last one.
+     */
+    static class PagingTransport implements GSTransport {
+        private final String[] pages;
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+
+        PagingTransport(String... pages) {
+            this.pages = pages;
+        }
+
+        public GSTransportResponse send(GSTransportRequest request) throws IOException {
+            String page = pages[Math.min(bodies.size(), pages.length - 1)];
+            bodies.add(new String(request.getBody(), "UTF-8"));
+            return new GSTransportResponse(200, Collections.<String, List<String>>emptyMap(),
+                    new ByteArrayInputStream(page.getBytes("UTF-8")));
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class GSDeadlineTest extends TestCase {
+
+    @Test
+    public void testChildNeverEndsAfterParent() {
+        GSDeadline parent = GSDeadline.after(100);
+
+        assertSame(parent, parent.child(5000));
+        assertTrue(parent.child(10).remainingMS() <= 10);
+        assertSame(parent, parent.min(GSDeadline.after(5000)));
+        assertSame(parent, parent.min(null));
+        assertFalse(parent.isExpired());
+        assertTrue(GSDeadline.after(0).isExpired());
+        assertEquals(0, GSDeadline.after(-10).remainingMS());
+    }
+
+    @Test
+    public void testTotalTimeoutCancelsTricklingBody() {
+        TricklingTransport transport = new TricklingTransport();
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.setReadTimeout(1000);
+        request.setTotalTimeout(200);
+
+        long start = System.nanoTime();
+        GSResponse res = request.send();
+
+        assertEquals(504002, res.getErrorCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(transport.request.isCancelled());
+        assertTrue(transport.request.getReadTimeoutMS() <= 200);
+    }
+
+    @Test
+    public void testRequestCanBeSentAgainAfterDeadline() {
+        final TricklingTransport trickling = new TricklingTransport();
+        final GSRequestTest.RecordingTransport answering = new GSRequestTest.RecordingTransport("{\"errorCode\":0}");
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", new GSTransport() {
+            private boolean first = true;
+
+            public GSTransportResponse send(GSTransportRequest request) throws IOException {
+                if (first) {
+                    first = false;
+                    return trickling.send(request);
+                }
+                return answering.send(request);
+            }
+        });
+        request.setTotalTimeout(200);
+
+        assertEquals(504002, request.send().getErrorCode());
+        assertEquals(0, request.send().getErrorCode());
+        assertFalse(request.isCancelled());
+    }
+
+    @Test
+    public void testSeparateTimeoutsAreCappedByDeadline() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":0}");
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.setConnectTimeout(100);
+        request.setReadTimeout(5000);
+
+        request.send(2000);
+        assertEquals(100, transport.request.getConnectTimeoutMS());
+        assertEquals(5000, transport.request.getReadTimeoutMS());
+
+        request.setDeadline(GSDeadline.after(10000).child(1000));
+        request.send(2000);
+        assertEquals(100, transport.request.getConnectTimeoutMS());
+        assertTrue(transport.request.getReadTimeoutMS() <= 1000);
+    }
+
+    @Test
+    public void testExpiredDeadlineIsNotSent() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":0}");
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.setDeadline(GSDeadline.after(0));
+
+        assertEquals(504002, request.send().getErrorCode());
+        assertEquals(0, transport.bodies.size());
+    }
+
+    @Test
+    public void testDeadlineStopsRetries() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport((String) null);
+        GSRetryPolicy policy = new GSRetryPolicy();
+        policy.setMaxAttempts(10);
+        policy.setBackoff(500, 500);
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.setRetryPolicy(policy);
+        request.setTotalTimeout(300);
+
+        long start = System.nanoTime();
+        assertEquals(504002, request.send().getErrorCode());
+        // a retry is only scheduled if it starts before the deadline
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(transport.bodies.size() < 10);
+    }
+
+    @Test
+    public void testCancellingFutureClosesConnection() throws Exception {
+        TricklingTransport transport = new TricklingTransport();
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+
+        CompletableFuture<GSResponse> future = request.sendAsync();
+        assertTrue(transport.started.await(2, TimeUnit.SECONDS));
+        future.cancel(true);
+
+        assertTrue(request.isCancelled());
+        assertTrue(transport.closed.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancelledRequestIsNotSent() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":0}");
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", transport);
+        request.cancel();
+
+        assertEquals(GSResponse.ERROR_REQUEST_CANCELLED, request.send().getErrorCode());
+        assertEquals(0, transport.bodies.size());
+    }
+
+    /**
+     * Answers with a body that sends one byte every 20ms and never ends, until the request is cancelled.
+     */
+    static class TricklingTransport implements GSTransport {
+        volatile GSTransportRequest request;
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        public GSTransportResponse send(GSTransportRequest request) throws IOException {
+            this.request = request;
+            request.setCancelHandler(new Runnable() {
+                public void run() {
+                    closed.countDown();
+                }
+            });
+            started.countDown();
+            return new GSTransportResponse(200, Collections.<String, List<String>>emptyMap(), new InputStream() {
+                private boolean first = true;
+
+                public int read() throws IOException {
+                    try {
+                        if (closed.await(20, TimeUnit.MILLISECONDS))
+                            throw new IOException("Socket closed");
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                    if (first) {
+                        first = false;
+                        return '{';
+                    }
+                    return ' ';
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class GSExecutorsTest extends TestCase {
+
+    @Test
+    public void testBoundedExecutorUsesConfiguredLimits() {
+        ThreadPoolExecutor executor = GSExecutors.newBoundedExecutor(3, 7, new ThreadPoolExecutor.CallerRunsPolicy());
+
+        assertEquals(3, executor.getMaximumPoolSize());
+        assertEquals(7, executor.getQueue().remainingCapacity());
+        assertTrue(executor.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.CallerRunsPolicy);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testShutdownStopsOnlyBuiltInDefaultExecutor() {
+        ThreadPoolExecutor custom = GSExecutors.newBoundedExecutor(1, 1, null);
+        GSExecutors.setDefaultExecutor(custom);
+        GSExecutors.shutdown();
+        assertFalse(custom.isShutdown());
+        custom.shutdown();
+
+        GSExecutors.setDefaultExecutor(null);
+        Executor builtIn = GSExecutors.getDefaultExecutor();
+        GSExecutors.shutdown();
+        assertTrue(((ThreadPoolExecutor) builtIn).isShutdown());
+        assertNotSame(builtIn, GSExecutors.getDefaultExecutor());
+    }
+
+    @Test
+    public void testVirtualThreadExecutorMatchesRuntimeSupport() throws Exception {
+        if (!GSExecutors.isVirtualThreadSupported()) {
+            try {
+                GSExecutors.newVirtualThreadExecutor();
+                fail("Should throw on a JVM without virtual threads");
+            } catch (UnsupportedOperationException expected) {
+            }
+            return;
+        }
+
+        ExecutorService executor = GSExecutors.newVirtualThreadExecutor();
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setTransport(new GSRequestTest.RecordingTransport("{\"errorCode\":0}".getBytes(), null));
+        request.setExecutor(executor);
+
+        assertEquals(0, request.sendAsync().get(5, TimeUnit.SECONDS).getErrorCode());
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,236 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RunWith(JUnit4.class)
+public class GSHedgingPolicyTest extends TestCase {
+
+    private static final String OK = "{\"errorCode\":0,\"statusCode\":200}";
+
+    @Test
+    public void testSlowAttemptIsHedgedAndCancelled() throws Exception {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(20, 20);
+        final List<Boolean> hedgeWon = new ArrayList<Boolean>();
+        policy.setMetricsListener(new GSMetricsListener() {
+            public void onHedge(String apiMethod, long delayMS, boolean won) {
+                hedgeWon.add(won);
+            }
+        });
+        SlowFirstTransport transport = new SlowFirstTransport();
+
+        GSRequest request = new GSRequest("apiKey", "c2VjcmV0", "accounts.getAccountInfo", null, false);
+        request.setTransport(transport);
+        request.setHedgingPolicy(policy);
+
+        long start = System.nanoTime();
+        GSResponse res = request.send();
+
+        assertEquals(0, res.getErrorCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(2, transport.bodies.size());
+        assertTrue(transport.firstCancelled);
+        assertFalse(GSRequestTest.formParam(transport.bodies.get(0), "nonce").equals(GSRequestTest.formParam(transport.bodies.get(1), "nonce")));
+        assertEquals(Collections.singletonList(true), hedgeWon);
+    }
+
+    @Test
+    public void testFastAttemptIsNotHedged() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(500, 20);
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport(OK);
+
+        GSResponse res = newRequest("accounts.search", transport, policy).send();
+
+        assertEquals(0, res.getErrorCode());
+        assertEquals(1, transport.bodies.size());
+    }
+
+    @Test
+    public void testWriteMethodIsNotHedged() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(1, 20);
+        policy.setMinDelay(1);
+        SlowFirstTransport transport = new SlowFirstTransport();
+        transport.releaseAfterMS = 50;
+
+        newRequest("accounts.setAccountInfo", transport, policy).send();
+
+        assertEquals(1, transport.bodies.size());
+    }
+
+    @Test
+    public void testCursorRequestIsNotHedged() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(1, 20);
+        policy.setMinDelay(1);
+        SlowFirstTransport transport = new SlowFirstTransport();
+        transport.releaseAfterMS = 50;
+
+        GSRequest request = newRequest("accounts.search", transport, policy);
+        request.setParam("query", "SELECT UID FROM accounts");
+        request.setParam("openCursor", true);
+        request.send();
+        assertEquals(1, transport.bodies.size());
+
+        request = newRequest("accounts.search", transport, policy);
+        request.setParam("cursorId", "c1");
+        request.send();
+        assertEquals(2, transport.bodies.size());
+    }
+
+    @Test
+    public void testHedgeIsNotSentOnSchedulerThread() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(1, 20);
+        policy.setMinDelay(1);
+        SlowFirstTransport transport = new SlowFirstTransport();
+        transport.releaseAfterMS = 100;
+
+        GSRequest request = newRequest("accounts.getAccountInfo", transport, policy);
+        // runs every task on the submitting thread, like a saturated CallerRunsPolicy pool
+        request.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+
+        assertEquals(0, request.send().getErrorCode());
+        assertEquals(1, transport.bodies.size());
+        assertFalse(transport.firstCancelled);
+    }
+
+    @Test
+    public void testTimedOutPrimariesDoNotWaitForQueuedHedges() throws Exception {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(20, 20);
+        policy.setMinDelay(1);
+        ThreadPoolExecutor executor = GSExecutors.newBoundedExecutor(2, 100, null);
+        try {
+            // every attempt times out, so each primary's hedge is queued behind the other primaries
+            GSTransport transport = new GSTransport() {
+                public GSTransportResponse send(GSTransportRequest request) throws IOException {
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                    throw new SocketTimeoutException("Read timed out");
+                }
+            };
+            List<CompletableFuture<GSResponse>> responses = new ArrayList<CompletableFuture<GSResponse>>();
+            for (int i = 0; i < 4; i++) {
+                GSRequest request = newRequest("accounts.getAccountInfo", transport, policy);
+                request.setExecutor(executor);
+                responses.add(request.sendAsync());
+            }
+
+            for (CompletableFuture<GSResponse> response : responses)
+                assertEquals(504002, response.get(5, TimeUnit.SECONDS).getErrorCode());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDelayFollowsPercentile() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setPercentile(0.9);
+        policy.setInitialDelay(250, 50);
+        policy.setMinDelay(1);
+
+        for (int i = 1; i <= 49; i++)
+            policy.recordLatency("accounts.search", TimeUnit.MILLISECONDS.toNanos(i));
+        assertEquals(250, policy.getHedgeDelayMS("accounts.search"));
+
+        for (int i = 50; i <= 100; i++)
+            policy.recordLatency("accounts.search", TimeUnit.MILLISECONDS.toNanos(i));
+        // recalculated every few samples, so it may trail the exact p90 of 90 ms
+        long delay = policy.getHedgeDelayMS("accounts.search");
+        assertTrue(delay >= 85 && delay <= 90);
+    }
+
+    @Test
+    public void testLosingPrimaryIsRecordedAsLowerBound() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(50, 2);
+        policy.setMinDelay(1);
+        SlowFirstTransport transport = new SlowFirstTransport();
+
+        assertEquals(0, newRequest("accounts.getAccountInfo", transport, policy).send().getErrorCode());
+
+        // two samples: the fast hedge, and the primary cancelled about 50 ms after it started, which is a little
+        // after the hedge timer was scheduled
+        policy.setInitialDelay(1000, 2);
+        long delay = policy.getHedgeDelayMS("accounts.getAccountInfo");
+        assertTrue(delay >= 30 && delay < 1000);
+    }
+
+    @Test
+    public void testMethodsAreCaseInsensitive() {
+        GSHedgingPolicy policy = new GSHedgingPolicy();
+        policy.setInitialDelay(250, 1);
+        policy.setMinDelay(1);
+
+        policy.recordLatency("Accounts.Search", TimeUnit.MILLISECONDS.toNanos(40));
+
+        assertTrue(policy.isHedged("ACCOUNTS.SEARCH"));
+        assertEquals(40, policy.getHedgeDelayMS("accounts.search"));
+    }
+
+    private static GSRequest newRequest(String method, GSTransport transport, GSHedgingPolicy policy) {
+        GSRequest request = GSRequestTest.newRequest(method, transport);
+        request.setHedgingPolicy(policy);
+        return request;
+    }
+
+    /**
+     * Blocks the first request sent from the thread that created it, the primary attempt of a synchronous send, until
+     * it is cancelled, or for releaseAfterMS. Answers other requests, such as hedges, immediately.
+     */
+    static class SlowFirstTransport implements GSTransport {
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        private final Thread owner = Thread.currentThread();
+        private final AtomicBoolean blocked = new AtomicBoolean();
+        volatile boolean firstCancelled;
+        long releaseAfterMS = 5000;
+
+        public GSTransportResponse send(GSTransportRequest request) throws IOException {
+            bodies.add(new String(request.getBody(), "UTF-8"));
+            if (Thread.currentThread() == owner && blocked.compareAndSet(false, true)) {
+                final CountDownLatch cancelled = new CountDownLatch(1);
+                request.setCancelHandler(new Runnable() {
+                    public void run() {
+                        cancelled.countDown();
+                    }
+                });
+                try {
+                    if (cancelled.await(releaseAfterMS, TimeUnit.MILLISECONDS)) {
+                        firstCancelled = true;
+                        throw new IOException("Socket closed");
+                    }
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
+            return new GSTransportResponse(200, Collections.<String, List<String>>emptyMap(),
+                    new ByteArrayInputStream(OK.getBytes("UTF-8")));
+        }
+    }
+}
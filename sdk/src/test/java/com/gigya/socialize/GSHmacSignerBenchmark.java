@@ -0,0 +1,99 @@
+package com.gigya.socialize;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares the cost of HMAC signatures with the static {@link SigUtils} methods and with a {@link GSHmacSigner}.
+ * Not a unit test; run manually:
+ * <pre>
+ * java -cp ... com.gigya.socialize.GSHmacSignerBenchmark [iterations] [threads]
+ * </pre>
+ * Texts are a UID signature base string and OAuth1 base strings of typical request sizes. The output shows the
+ * time per signature on one thread, and the throughput with all threads signing concurrently.
+ */
+public class GSHmacSignerBenchmark {
+
+    private static final String SECRET = Base64.encodeToString("benchmark-secret-key-0123456789abcdef".getBytes(), false);
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        final GSHmacSigner signer = new GSHmacSigner(SECRET);
+
+        System.out.printf("%10s %16s %16s %18s %18s%n", "text bytes", "SigUtils ns/op", "signer ns/op",
+                "SigUtils ops/s (" + threads + ")", "signer ops/s (" + threads + ")");
+        for (int length : new int[]{40, 300, 2000}) {
+            final String text = buildText(length);
+            Task staticTask = new Task() {
+                public String sign() throws Exception {
+                    return SigUtils.getOAuth1Signature(text, SECRET);
+                }
+            };
+            Task signerTask = new Task() {
+                public String sign() {
+                    return signer.getOAuth1Signature(text);
+                }
+            };
+
+            // warm up
+            run(staticTask, iterations / 4);
+            run(signerTask, iterations / 4);
+
+            double staticNanos = run(staticTask, iterations) / (double) iterations;
+            double signerNanos = run(signerTask, iterations) / (double) iterations;
+            double staticThroughput = runConcurrently(staticTask, iterations, threads);
+            double signerThroughput = runConcurrently(signerTask, iterations, threads);
+            System.out.printf("%10d %16.0f %16.0f %18.0f %18.0f%n", text.length(), staticNanos, signerNanos,
+                    staticThroughput, signerThroughput);
+        }
+    }
+
+    private interface Task {
+        String sign() throws Exception;
+    }
+
+    private static long run(Task task, int iterations) throws Exception {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            sink += task.sign().length();
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42)
+            System.out.print("");
+        return elapsed;
+    }
+
+    private static double runConcurrently(final Task task, final int iterations, int threads) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Long>> calls = new ArrayList<Callable<Long>>();
+            for (int t = 0; t < threads; t++) {
+                calls.add(new Callable<Long>() {
+                    public Long call() throws Exception {
+                        return run(task, iterations);
+                    }
+                });
+            }
+            long start = System.nanoTime();
+            for (Future<Long> future : pool.invokeAll(calls))
+                future.get();
+            long elapsed = System.nanoTime() - start;
+            return iterations * (double) threads / (elapsed / 1e9);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static String buildText(int length) {
+        StringBuilder sb = new StringBuilder("POST&https%3A%2F%2Faccounts.us1.gigya.com%2Faccounts.setAccountInfo&");
+        int i = 0;
+        while (sb.length() < length)
+            sb.append("param").append(i++).append("%3Dvalue").append(i).append("%26");
+        return sb.substring(0, length);
+    }
+}
@@ -0,0 +1,89 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@RunWith(JUnit4.class)
+public class GSHmacSignerTest extends TestCase {
+
+    private static final String SECRET = Base64.encodeToString("test-secret-key-bytes".getBytes(), false);
+
+    @Test
+    public void testMatchesStaticSignatures() throws Exception {
+        GSHmacSigner signer = new GSHmacSigner(SECRET);
+        String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+
+        String baseString = "POST&https%3A%2F%2Faccounts.us1.gigya.com%2Faccounts.getAccountInfo&apiKey%3Dkey%26UID%3Duid";
+        assertEquals(SigUtils.getOAuth1Signature(baseString, SECRET), signer.getOAuth1Signature(baseString));
+
+        String userSignature = SigUtils.getOAuth1Signature(timestamp + "_UID-1", SECRET);
+        assertTrue(signer.validateUserSignature("UID-1", timestamp, userSignature));
+        assertTrue(signer.validateUserSignature("UID-1", timestamp, userSignature, 60));
+        assertFalse(signer.validateUserSignature("UID-2", timestamp, userSignature));
+        assertFalse(signer.validateUserSignature("UID-1", timestamp, null));
+
+        String friendSignature = SigUtils.getOAuth1Signature(timestamp + "_UID-2_UID-1", SECRET);
+        assertTrue(signer.validateFriendSignature("UID-1", timestamp, "UID-2", friendSignature, 60));
+        assertTrue(SigUtils.validateFriendSignature("UID-1", timestamp, "UID-2", SECRET, friendSignature));
+
+        String cookie = signer.getDynamicSessionSignature("glt-token", 300);
+        String expiration = cookie.substring(0, cookie.indexOf('_'));
+        assertEquals(SigUtils.getOAuth1Signature("glt-token_" + expiration, SECRET), cookie.substring(expiration.length() + 1));
+    }
+
+    @Test
+    public void testEncodesTextAsUtf8() throws Exception {
+        GSHmacSigner signer = new GSHmacSigner(SECRET);
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 50000; i++)
+            longText.append("é中");
+
+        for (String text : new String[]{"", "café 中文 😀", "lone \ud800 surrogate", longText.toString(), "short"})
+            assertEquals(SigUtils.getOAuth1Signature(text, SECRET), signer.sign(text));
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        final GSHmacSigner signer = new GSHmacSigner(SECRET);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            results.add(threads.submit(new Callable<Boolean>() {
+                public Boolean call() throws Exception {
+                    for (int i = 0; i < 500; i++) {
+                        String text = "thread" + thread + "_" + i;
+                        if (!signer.verify(text, SigUtils.getOAuth1Signature(text, SECRET)))
+                            return false;
+                    }
+                    return true;
+                }
+            }));
+        }
+        for (Future<Boolean> result : results)
+            assertTrue(result.get());
+        threads.shutdown();
+    }
+
+    @Test
+    public void testInvalidSecretIsRejected() {
+        for (String secret : new String[]{null, "", "abc"}) {
+            try {
+                new GSHmacSigner(secret);
+                fail("Should reject secret " + secret);
+            } catch (InvalidKeyException e) {
+                // expected
+            }
+        }
+    }
+}
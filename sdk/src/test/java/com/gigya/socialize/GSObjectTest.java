@@ -11,6 +11,7 @@ import org.junit.runners.JUnit4;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import java.io.StringReader;
 import java.util.Arrays;
 
 
@@ -86,6 +87,14 @@ public class GSObjectTest extends TestCase {
         JSONAssert.assertEquals(gsObject.toJsonObject(), expectedJSONObject, JSONCompareMode.STRICT);
     }
 
+    @Test
+    public void testConstructWithReaderCreatesObjectWithSameData() throws Exception {
+        String expectedJSONString = String.format("{'null1':null, '%s':'%s', '%s':%d, 'null2':null, '%s':'%s', '%s':'%s', 'null3':null}", KEY_STR, VALUE_STR, KEY_INT, VALUE_INT, KEY_GIGYA_OBJ, VALUE_GIGYA_OBJ.toJsonString(), KEY_GIGYA_ARRAY, VALUE_GIGYA_ARRAY.toJsonArray());
+        JSONObject expectedJSONObject = new JSONObject(expectedJSONString);
+        gsObject = new GSObject(new StringReader(expectedJSONString));
+        JSONAssert.assertEquals(gsObject.toJsonObject(), expectedJSONObject, JSONCompareMode.STRICT);
+    }
+
     @Test(expected = Exception.class)
     public void testConstructObjectWithNonJsonStringThrowsException() throws Exception {
         new GSObject("non-json-string");
@@ -0,0 +1,152 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@RunWith(JUnit4.class)
+public class GSRateLimiterTest extends TestCase {
+
+    @Test
+    public void testBurstIsAvailableImmediately() throws Exception {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setMethodLimit("accounts.getAccountInfo", 1, 5);
+
+        for (int i = 0; i < 5; i++)
+            assertEquals(0, limiter.acquire("apiKey", "accounts.getAccountInfo"));
+
+        assertEquals(5, limiter.getAcquireCount());
+        assertEquals(0, limiter.getDelayedCount());
+    }
+
+    @Test
+    public void testRequestsBeyondBurstWaitForPermit() throws Exception {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setNamespaceLimit("accounts", 20, 1);
+
+        limiter.acquire("apiKey", "accounts.getAccountInfo");
+        long start = System.nanoTime();
+        long waited = limiter.acquire("apiKey", "accounts.search");
+
+        assertTrue(waited > 0);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertEquals(1, limiter.getDelayedCount());
+        assertEquals(waited, limiter.getTotalWaitNanos());
+    }
+
+    @Test
+    public void testLimitsApplyOnlyToMatchingRequests() throws Exception {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setApiKeyLimit("otherKey", 1, 1);
+        limiter.setNamespaceLimit("ds", 1, 1);
+        limiter.setMethodLimit("socialize.getUserInfo", 1, 1);
+
+        for (int i = 0; i < 3; i++)
+            assertEquals(0, limiter.acquire("apiKey", "accounts.getAccountInfo"));
+        assertEquals(0, limiter.acquire("apiKey", "getUserInfo"));
+        assertTrue(limiter.acquire("apiKey", "socialize.getUserInfo") > 0);
+    }
+
+    @Test
+    public void testSendReportsWaitToMetricsListener() {
+        final AtomicLong reported = new AtomicLong(-1);
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setApiKeyLimit("apiKey", 1000, 1);
+        limiter.setMetricsListener(new GSMetricsListener() {
+            @Override
+            public void onRateLimitWait(String apiMethod, long waitNanos) {
+                reported.set(waitNanos);
+            }
+        });
+
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", new GSRequestTest.RecordingTransport("{\"errorCode\":0}"));
+        request.setRateLimiter(limiter);
+
+        assertEquals(0, request.send().getErrorCode());
+        assertEquals(0, reported.get());
+        assertEquals(1, limiter.getAcquireCount());
+    }
+
+    @Test
+    public void testEveryLimitIsChargedWhenTheSlowestAllows() {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setNamespaceLimit("accounts", 10, 1);
+        limiter.setMethodLimit("accounts.search", 1, 1);
+
+        assertEquals(0, limiter.reserve("apiKey", "accounts.search", Long.MAX_VALUE));
+        long searchWait = limiter.reserve("apiKey", "accounts.search", Long.MAX_VALUE);
+        assertTrue(searchWait > TimeUnit.MILLISECONDS.toNanos(900));
+
+        // the namespace permit of the delayed search is taken when the search is sent, not now
+        assertTrue(limiter.reserve("apiKey", "accounts.getAccountInfo", Long.MAX_VALUE) >= searchWait);
+    }
+
+    @Test
+    public void testPermitBeyondMaxWaitIsNotTaken() {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setMethodLimit("accounts.search", 1, 1);
+
+        assertEquals(0, limiter.reserve("apiKey", "accounts.search", 0));
+        assertEquals(-1, limiter.reserve("apiKey", "accounts.search", TimeUnit.MILLISECONDS.toNanos(100)));
+
+        assertEquals(1, limiter.getAcquireCount());
+        assertTrue(limiter.reserve("apiKey", "accounts.search", Long.MAX_VALUE) < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testWaitIsBoundedByDeadlineAndCancel() throws Exception {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setMethodLimit("accounts.getAccountInfo", 0.2, 1);
+        assertEquals(0, newRequest(limiter).send().getErrorCode());
+
+        GSRequest late = newRequest(limiter);
+        late.setTotalTimeout(100);
+        long start = System.nanoTime();
+        assertEquals(504002, late.send().getErrorCode());
+
+        GSRequest cancelled = newRequest(limiter);
+        Future<GSResponse> response = cancelled.sendAsync();
+        Thread.sleep(50);
+        cancelled.cancel();
+        assertEquals(GSResponse.ERROR_REQUEST_CANCELLED, response.get(2, TimeUnit.SECONDS).getErrorCode());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testRequestNotSentGivesPermitBack() throws Exception {
+        GSRateLimiter limiter = new GSRateLimiter();
+        limiter.setMethodLimit("accounts.getAccountInfo", 5, 1);
+        assertEquals(0, newRequest(limiter).send().getErrorCode());
+
+        GSRequest cancelled = newRequest(limiter);
+        Future<GSResponse> response = cancelled.sendAsync();
+        Thread.sleep(50);
+        cancelled.cancel();
+        assertEquals(GSResponse.ERROR_REQUEST_CANCELLED, response.get(2, TimeUnit.SECONDS).getErrorCode());
+
+        // the next request takes the slot of the cancelled one, not the one after it
+        long waitNanos = limiter.reserve("apiKey", "accounts.getAccountInfo", Long.MAX_VALUE);
+        assertTrue(waitNanos < TimeUnit.MILLISECONDS.toNanos(200));
+
+        GSCircuitBreaker breaker = new GSCircuitBreaker();
+        breaker.setWindow(1, 1);
+        breaker.onResponse("accounts.us1.gigya.com", breaker.tryAcquire("accounts.us1.gigya.com"),
+                new GSResponse("accounts.getAccountInfo", null, 500001, null));
+        GSRequest rejected = newRequest(limiter);
+        rejected.setCircuitBreaker(breaker);
+        assertEquals(GSResponse.ERROR_CIRCUIT_OPEN, rejected.send().getErrorCode());
+        // the rejected request waited for its slot, which is free again
+        assertTrue(limiter.reserve("apiKey", "accounts.getAccountInfo", Long.MAX_VALUE) < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    private static GSRequest newRequest(GSRateLimiter limiter) {
+        GSRequest request = GSRequestTest.newRequest("accounts.getAccountInfo", new GSRequestTest.RecordingTransport("{\"errorCode\":0}"));
+        request.setRateLimiter(limiter);
+        return request;
+    }
+}
@@ -0,0 +1,71 @@
+package com.gigya.socialize;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the CPU cost and byte savings of gzip request bodies (see {@link GSRequest#setRequestCompressionThreshold}).
+ * Not a unit test; run manually:
+ * <pre>
+ * java -cp ... com.gigya.socialize.GSRequestCompressionBenchmark [iterations]
+ * </pre>
+ * Bodies are URL encoded accounts.setAccountInfo parameters with profile and data objects of increasing size.
+ * The output shows the compressed size and the compression time per request, so the threshold can be chosen for
+ * the available egress bandwidth: compression pays off when bytes saved / bandwidth exceeds the time spent.
+ */
+public class GSRequestCompressionBenchmark {
+
+    private static final int[] FIELD_COUNTS = {4, 16, 64, 256, 1024, 4096};
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        Random random = new Random(42);
+
+        System.out.printf("%10s %12s %8s %12s %14s%n", "body bytes", "gzip bytes", "ratio", "us/request", "MB/s (CPU)");
+        for (int fields : FIELD_COUNTS) {
+            byte[] body = buildBody(fields, random);
+
+            // warm up
+            for (int i = 0; i < iterations / 4; i++)
+                GSRequest.gzip(body);
+
+            int compressedLength = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+                compressedLength = GSRequest.gzip(body).length;
+            long elapsed = System.nanoTime() - start;
+
+            double microsPerRequest = elapsed / 1000.0 / iterations;
+            double throughput = body.length * (double) iterations / (1 << 20) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1));
+            System.out.printf("%10d %12d %7.1f%% %12.1f %14.1f%n", body.length, compressedLength,
+                    100.0 * compressedLength / body.length, microsPerRequest, throughput);
+        }
+    }
+
+    private static byte[] buildBody(int fields, Random random) throws Exception {
+        GSObject profile = new GSObject();
+        profile.put("firstName", "First" + random.nextInt(1000));
+        profile.put("lastName", "Last" + random.nextInt(1000));
+        profile.put("email", "user" + random.nextInt(1000000) + "@example.com");
+
+        GSObject data = new GSObject();
+        for (int i = 0; i < fields; i++) {
+            GSObject item = new GSObject();
+            item.put("id", random.nextInt(1000000));
+            item.put("category", "category-" + random.nextInt(20));
+            item.put("subscribed", random.nextBoolean());
+            item.put("updated", "2024-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10) + "T10:00:00Z");
+            data.put("item" + i, item);
+        }
+
+        GSObject params = new GSObject();
+        params.put("UID", "_guid_" + Long.toHexString(random.nextLong()));
+        params.put("profile", profile.toJsonString());
+        params.put("data", data.toJsonString());
+        params.put("apiKey", "3_" + Long.toHexString(random.nextLong()));
+        params.put("timestamp", System.currentTimeMillis() / 1000);
+        params.put("nonce", Long.toString(random.nextLong()));
+        params.put("sig", "c2lnbmF0dXJlc2lnbmF0dXJl");
+        return GSRequest.buildQS(params).getBytes("UTF-8");
+    }
+}
@@ -5,8 +5,26 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
 import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 
 @RunWith(JUnit4.class)
@@ -48,4 +66,333 @@ public class GSRequestTest extends TestCase {
         params.put("c", URL_COMPLIANT_STRING);
         assertEquals(GSRequest.buildQS(params), "a=" + URL_ENCODED_STRING + "&b=null" + "&c=" + URL_COMPLIANT_STRING);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSendUsesRequestTransport() {
+        RecordingTransport transport = new RecordingTransport("{\"errorCode\":0,\"UID\":\"u1\"}".getBytes(), null);
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", new GSObject(), true, "userKey");
+        request.setTransport(transport);
+        request.setParam("UID", "u1");
+
+        GSResponse response = request.send();
+
+        assertEquals(0, response.getErrorCode());
+        assertEquals("u1", response.getString("UID", null));
+        assertEquals("POST", transport.request.getHttpMethod());
+        assertEquals("https://accounts.us1.gigya.com/accounts.getAccountInfo", transport.request.getUrl());
+        assertEquals("gzip", transport.request.getHeaders().get("Accept-Encoding"));
+        String body = new String(transport.request.getBody());
+        assertTrue(body.contains("UID=u1"));
+        assertTrue(body.contains("apiKey=apiKey"));
+    }
+
+    @Test
+    public void testSendDecodesGzipResponseBody() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write("{\"errorCode\":0,\"value\":\"zipped\"}".getBytes("UTF-8"));
+        gzip.close();
+
+        RecordingTransport transport = new RecordingTransport(bytes.toByteArray(), "gzip");
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setTransport(transport);
+
+        GSResponse response = request.send();
+
+        assertEquals(0, response.getErrorCode());
+        assertEquals("zipped", response.getString("value", null));
+        assertEquals(Arrays.asList("gzip"), response.getHeaders().get("Content-Encoding"));
+    }
+
+    @Test
+    public void testStreamedResponseIsParsedWithoutRetainingText() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write("\n {\"errorCode\":0,\n\"results\":[{\"UID\":\"u1\"},{\"UID\":\"u2\"}]}\n".getBytes("UTF-8"));
+        gzip.close();
+
+        GSRequest request = new GSRequest("apiKey", null, "accounts.search", null, true, "userKey");
+        request.setTransport(new RecordingTransport(bytes.toByteArray(), "gzip"));
+        request.setStreamResponse(true);
+
+        GSResponse response = request.send();
+
+        assertEquals(0, response.getErrorCode());
+        assertEquals("u2", response.getArray("results", null).getObject(1).getString("UID"));
+        assertTrue(response.getResponseText().contains("\"u1\""));
+        assertFalse(response.getLog().contains("raw_response"));
+    }
+
+    @Test
+    public void testStreamedResponseRetainsTextWhenAsked() {
+        String text = "{\"errorCode\":400006,\n\"errorMessage\":\"Invalid parameter value\"}";
+        GSRequest request = new GSRequest("apiKey", null, "accounts.search", null, true, "userKey");
+        request.setTransport(new RecordingTransport(text.getBytes(), null));
+        request.setStreamResponse(true);
+        request.setRetainResponseText(true);
+
+        GSResponse response = request.send();
+
+        assertEquals(400006, response.getErrorCode());
+        assertEquals("Invalid parameter value", response.getErrorMessage());
+        assertEquals(text, response.getResponseText());
+    }
+
+    @Test
+    public void testStreamedResponseReportsReadTimeout() {
+        GSRequest request = new GSRequest("apiKey", null, "accounts.search", null, true, "userKey");
+        request.setStreamResponse(true);
+        request.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest request) {
+                InputStream body = new java.io.SequenceInputStream(new ByteArrayInputStream("{\"errorCode\":0,".getBytes()), new InputStream() {
+                    public int read() throws IOException {
+                        throw new java.net.SocketTimeoutException("Read timed out");
+                    }
+                });
+                return new GSTransportResponse(200, new HashMap<String, List<String>>(), body);
+            }
+        });
+
+        assertEquals(504002, request.send().getErrorCode());
+    }
+
+    @Test
+    public void testLargeBodyIsCompressed() throws IOException {
+        RecordingTransport transport = new RecordingTransport("{\"errorCode\":0}".getBytes(), null);
+        GSRequest request = new GSRequest("apiKey", null, "accounts.setAccountInfo", null, true, "userKey");
+        request.setTransport(transport);
+        request.setRequestCompressionThreshold(1024);
+        request.setParam("data", new String(new char[4096]).replace('\0', 'x'));
+
+        assertEquals(0, request.send().getErrorCode());
+
+        assertEquals("gzip", transport.request.getHeaders().get("Content-Encoding"));
+        String body = new String(gunzip(transport.request.getBody()), "UTF-8");
+        assertTrue(body.contains("data=xxxx"));
+        assertTrue(transport.request.getBody().length < 1024);
+    }
+
+    @Test
+    public void testSmallBodyIsNotCompressed() {
+        RecordingTransport transport = new RecordingTransport("{\"errorCode\":0}".getBytes(), null);
+        GSRequest request = new GSRequest("apiKey", null, "accounts.setAccountInfo", null, true, "userKey");
+        request.setTransport(transport);
+        request.setRequestCompressionThreshold(1024);
+        request.setParam("data", "small");
+
+        request.send();
+
+        assertNull(transport.request.getHeaders().get("Content-Encoding"));
+    }
+
+    @Test
+    public void testCompressionFallsBackWhenRejected() throws IOException {
+        final List<GSTransportRequest> requests = new ArrayList<GSTransportRequest>();
+        GSRequest request = new GSRequest("apiKey", null, "accounts.importFullAccount", null, true, "userKey");
+        request.setAPIDomain("compression-test.gigya.com");
+        request.setRequestCompressionThreshold(0);
+        request.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest transportRequest) {
+                requests.add(transportRequest);
+                int status = transportRequest.getHeaders().containsKey("Content-Encoding") ? 415 : 200;
+                return new GSTransportResponse(status, new HashMap<String, List<String>>(),
+                        new ByteArrayInputStream("{\"errorCode\":0}".getBytes()));
+            }
+        });
+
+        assertEquals(0, request.send().getErrorCode());
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).getHeaders().get("Content-Encoding"));
+
+        request.send();
+        assertEquals(3, requests.size());
+        assertNull(requests.get(2).getHeaders().get("Content-Encoding"));
+    }
+
+    @Test
+    public void testCompressionFallsBackOnRequestFormatError() throws IOException {
+        final List<GSTransportRequest> requests = new ArrayList<GSTransportRequest>();
+        String secret = Base64.encodeToString("compression-secret".getBytes(), false);
+        GSRequest request = new GSRequest("apiKey", secret, "accounts.importFullAccount", null, true, "userKey");
+        request.setAPIDomain("compression-error-test.gigya.com");
+        request.setRequestCompressionThreshold(0);
+        request.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest transportRequest) {
+                requests.add(transportRequest);
+                String body = transportRequest.getHeaders().containsKey("Content-Encoding")
+                        ? "{\"errorCode\":400001,\"errorMessage\":\"Invalid request format\"}"
+                        : "{\"errorCode\":0}";
+                return new GSTransportResponse(200, new HashMap<String, List<String>>(),
+                        new ByteArrayInputStream(body.getBytes()));
+            }
+        });
+
+        assertEquals(0, request.send().getErrorCode());
+        assertEquals(2, requests.size());
+        assertNull(requests.get(1).getHeaders().get("Content-Encoding"));
+
+        // the resend is signed again
+        String compressedBody = new String(gunzip(requests.get(0).getBody()), "UTF-8");
+        String plainBody = new String(requests.get(1).getBody(), "UTF-8");
+        assertNotNull(formParam(compressedBody, "nonce"));
+        assertNotNull(formParam(plainBody, "nonce"));
+        assertFalse(formParam(compressedBody, "nonce").equals(formParam(plainBody, "nonce")));
+        assertFalse(formParam(compressedBody, "sig").equals(formParam(plainBody, "sig")));
+    }
+
+    @Test
+    public void testCompressionIsKeptOnOtherErrors() throws IOException {
+        final List<GSTransportRequest> requests = new ArrayList<GSTransportRequest>();
+        final String[] bodies = {
+                "{\"errorCode\":400002,\"errorMessage\":\"Missing required parameter\"}",
+                "{\"errorCode\":0,\"results\":[{\"data\":{\"errorCode\":400001}}]}"
+        };
+        GSRequest request = new GSRequest("apiKey", null, "accounts.search", null, true, "userKey");
+        request.setAPIDomain("compression-kept-test.gigya.com");
+        request.setRequestCompressionThreshold(0);
+        request.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest transportRequest) {
+                requests.add(transportRequest);
+                return new GSTransportResponse(200, new HashMap<String, List<String>>(),
+                        new ByteArrayInputStream(bodies[requests.size() - 1].getBytes()));
+            }
+        });
+
+        assertEquals(400002, request.send().getErrorCode());
+        assertEquals(0, request.send().getErrorCode());
+        assertEquals(2, requests.size());
+        assertEquals("gzip", requests.get(1).getHeaders().get("Content-Encoding"));
+    }
+
+    static String formParam(String body, String name) throws IOException {
+        for (String pair : body.split("&")) {
+            if (pair.startsWith(name + "="))
+                return java.net.URLDecoder.decode(pair.substring(name.length() + 1), "UTF-8");
+        }
+        return null;
+    }
+
+    @Test
+    public void testCompressedRequestResponseIsParsed() throws IOException {
+        GSRequest request = new GSRequest("apiKey", null, "accounts.importFullAccount", null, true, "userKey");
+        request.setAPIDomain("compression-ok-test.gigya.com");
+        request.setRequestCompressionThreshold(0);
+        RecordingTransport transport = new RecordingTransport(GSRequest.gzip("{\"errorCode\":0,\"UID\":\"u1\"}".getBytes()), "gzip");
+        request.setTransport(transport);
+
+        assertEquals("u1", request.send().getString("UID", null));
+        assertEquals("gzip", transport.request.getHeaders().get("Content-Encoding"));
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int n; (n = in.read(buffer)) != -1; )
+            out.write(buffer, 0, n);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSendMapsTransportFailureToErrorResponse() {
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setTransport(new GSTransport() {
+            public GSTransportResponse send(GSTransportRequest request) throws IOException {
+                throw new java.net.SocketTimeoutException("timeout");
+            }
+        });
+
+        assertEquals(504002, request.send().getErrorCode());
+    }
+
+    @Test
+    public void testSendAsyncCompletesWithResponse() throws Exception {
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setTransport(new RecordingTransport("{\"errorCode\":0,\"UID\":\"u1\"}".getBytes(), null));
+        ThreadPoolExecutor executor = GSExecutors.newBoundedExecutor(1, 1, null);
+        request.setExecutor(executor);
+
+        GSResponse response = request.sendAsync().get(5, TimeUnit.SECONDS);
+
+        assertEquals("u1", response.getString("UID", null));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSendAsyncReportsRejectedExecution() throws Exception {
+        GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setExecutor(new Executor() {
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("full");
+            }
+        });
+
+        GSResponse response = request.sendAsync().get(5, TimeUnit.SECONDS);
+
+        assertEquals(GSResponse.ERROR_REQUEST_REJECTED, response.getErrorCode());
+    }
+
+    @Test
+    public void testListenerRunsOnNonDaemonThreadAndFailuresAreLogged() throws Exception {
+        final GSRequest request = new GSRequest("apiKey", null, "accounts.getAccountInfo", null, true, "userKey");
+        request.setTransport(new RecordingTransport("{\"errorCode\":0}".getBytes(), null));
+        ThreadPoolExecutor executor = GSExecutors.newBoundedExecutor(1, 1, null);
+        request.setExecutor(executor);
+        final List<Boolean> daemon = new ArrayList<Boolean>();
+
+        request.send(new GSResponseListener() {
+            public void onGSResponse(String method, GSResponse response, Object context) {
+                daemon.add(Thread.currentThread().isDaemon());
+                throw new IllegalStateException("listener bug");
+            }
+        }, null);
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!request.logger.toString().contains("listener bug") && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(request.logger.toString().contains("listener bug"));
+        assertEquals(Arrays.asList(false), daemon);
+        executor.shutdown();
+    }
+
+    static GSRequest newRequest(String method, GSTransport transport) {
+        GSRequest request = new GSRequest("apiKey", null, method, null, true, "userKey");
+        request.setTransport(transport);
+        return request;
+    }
+
+    /**
+     * Records the requests it is sent and answers with the given responses in order, repeating the last one.
+     * A null response is a read timeout.
+     */
+    static class RecordingTransport implements GSTransport {
+        private final byte[][] responseBodies;
+        private final String contentEncoding;
+        final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+        volatile GSTransportRequest request;
+
+        RecordingTransport(byte[] responseBody, String contentEncoding) {
+            this.responseBodies = new byte[][]{responseBody};
+            this.contentEncoding = contentEncoding;
+        }
+
+        RecordingTransport(String... responses) {
+            this.responseBodies = new byte[responses.length][];
+            for (int i = 0; i < responses.length; i++)
+                responseBodies[i] = responses[i] == null ? null : responses[i].getBytes(StandardCharsets.UTF_8);
+            this.contentEncoding = null;
+        }
+
+        public synchronized GSTransportResponse send(GSTransportRequest request) throws IOException {
+            byte[] responseBody = responseBodies[Math.min(bodies.size(), responseBodies.length - 1)];
+            this.request = request;
+            bodies.add(new String(request.getBody(), "UTF-8"));
+            if (responseBody == null)
+                throw new SocketTimeoutException("Read timed out");
+            Map<String, List<String>> headers = new HashMap<String, List<String>>();
+            if (contentEncoding != null)
+                headers.put("Content-Encoding", Arrays.asList(contentEncoding));
+            return new GSTransportResponse(200, headers, new ByteArrayInputStream(responseBody));
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.gigya.socialize;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class GSRetryPolicyTest extends TestCase {
+
+    private static final String OK = "{\"errorCode\":0,\"statusCode\":200}";
+
+    @Test
+    public void testRetriesIdempotentMethodOnTimeout() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport(null, null, OK);
+        GSResponse res = newRequest("accounts.getAccountInfo", transport, newPolicy(3)).send();
+
+        assertEquals(0, res.getErrorCode());
+        assertEquals(3, transport.bodies.size());
+    }
+
+    @Test
+    public void testDoesNotRetryWriteOnTimeoutUnlessEnabled() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport((String) null, OK);
+        GSResponse res = newRequest("accounts.setAccountInfo", transport, newPolicy(3)).send();
+
+        assertEquals(504002, res.getErrorCode());
+        assertEquals(1, transport.bodies.size());
+
+        GSRetryPolicy policy = newPolicy(3);
+        policy.setRetryWrites(true);
+        transport = new GSRequestTest.RecordingTransport((String) null, OK);
+        res = newRequest("accounts.setAccountInfo", transport, policy).send();
+
+        assertEquals(0, res.getErrorCode());
+        assertEquals(2, transport.bodies.size());
+    }
+
+    @Test
+    public void testRetriesWriteOnRateLimitAndStopsAtMaxAttempts() {
+        String rateLimited = "{\"errorCode\":403048,\"statusCode\":403}";
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport(rateLimited, rateLimited, rateLimited, OK);
+        final List<Integer> retried = new ArrayList<Integer>();
+        GSRetryPolicy policy = newPolicy(3);
+        policy.setMetricsListener(new GSMetricsListener() {
+            public void onRetry(String apiMethod, int attempt, int errorCode, long delayMS) {
+                retried.add(attempt);
+            }
+        });
+
+        GSResponse res = newRequest("accounts.setAccountInfo", transport, policy).send();
+
+        assertEquals(403048, res.getErrorCode());
+        assertEquals(3, transport.bodies.size());
+        assertEquals(2, retried.size());
+    }
+
+    @Test
+    public void testNotRetriableErrorIsReturned() {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport("{\"errorCode\":400006,\"statusCode\":400}", OK);
+        GSResponse res = newRequest("accounts.getAccountInfo", transport, newPolicy(3)).send();
+
+        assertEquals(400006, res.getErrorCode());
+        assertEquals(1, transport.bodies.size());
+    }
+
+    @Test
+    public void testRetryIsSignedWithNewNonce() throws Exception {
+        GSRequestTest.RecordingTransport transport = new GSRequestTest.RecordingTransport((String) null, OK);
+        GSRequest request = new GSRequest("apiKey", "c2VjcmV0", "accounts.getAccountInfo", null, false);
+        request.setTransport(transport);
+        request.setRetryPolicy(newPolicy(2));
+        request.send();
+
+        assertEquals(2, transport.bodies.size());
+        assertFalse(GSRequestTest.formParam(transport.bodies.get(0), "nonce").equals(GSRequestTest.formParam(transport.bodies.get(1), "nonce")));
+    }
+
+    @Test
+    public void testBackoffIsBoundedAndRespectsDeadline() {
+        GSRetryPolicy policy = new GSRetryPolicy();
+        policy.setMaxAttempts(10);
+        policy.setBackoff(100, 400);
+        policy.setDeadline(0);
+        GSResponse timeout = new GSResponse("accounts.search", null, 504002, null);
+
+        for (int attempt = 1; attempt < 10; attempt++) {
+            long delay = policy.nextDelayMS("accounts.search", timeout, attempt, 0);
+            assertTrue(delay >= 0 && delay < Math.min(400, 100 << (attempt - 1)));
+        }
+        assertEquals(-1, policy.nextDelayMS("accounts.search", timeout, 10, 0));
+
+        policy.setDeadline(1000);
+        assertEquals(-1, policy.nextDelayMS("accounts.search", timeout, 1, 1000));
+    }
+
+    @Test
+    public void testHttpServerErrorIsRetriable() {
+        GSRetryPolicy policy = new GSRetryPolicy();
+        GSResponse res = new GSResponse("accounts.search", "<html>Bad Gateway</html>", new GSLogger());
+        res.httpStatusCode = 502;
+
+        assertTrue(policy.isRetriable("accounts.search", res));
+        assertFalse(policy.isRetriable("accounts.deleteAccount", res));
+    }
+
+    private static GSRetryPolicy newPolicy(int maxAttempts) {
+        GSRetryPolicy policy = new GSRetryPolicy();
+        policy.setMaxAttempts(maxAttempts);
+        policy.setBackoff(0, 0);
+        return policy;
+    }
+
+    private static GSRequest newRequest(String method, GSTransport transport, GSRetryPolicy policy) {
+        GSRequest request = GSRequestTest.newRequest(method, transport);
+        request.setRetryPolicy(policy);
+        return request;
+    }
+}
@@ -58,6 +58,12 @@ public class SigUtilsTest extends TestCase {
         assertEquals(SigUtils.getOAuth1Signature(baseString, sessionSecret), "j4/Jwtp11HLWl7KG3QlsczfRRpU=");
     }
 
+    @Test
+    public void testOAuth1SigningWithSignerReturnsExpectedSignature() throws Exception {
+        String baseString = SigUtils.calcOAuth1BaseString(REQUEST_METHOD, apiMethodUrl, request);
+        assertEquals(new GSHmacSigner(sessionSecret).getOAuth1Signature(baseString), "j4/Jwtp11HLWl7KG3QlsczfRRpU=");
+    }
+
     @Test
     public void testGetOAuth1BaseStringFromUrlSchemeWithNonDefaultPortReturnsExpectedString() throws Exception {
         String urlScheme = "http";